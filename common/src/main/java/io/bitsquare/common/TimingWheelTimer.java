@@ -0,0 +1,196 @@
+package io.bitsquare.common;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Timer based on a hashed timing wheel. Scheduling and stopping a timer costs O(1) and the UserThread gets only
+ * called if timers are due, instead of checking all timers at each frame like the FrameRateTimer.
+ * Used only in headless apps like the seed node (set it with UserThread.setTimerClass).
+ * <p>
+ * The wheel has WHEEL_SIZE buckets, each covering TICK_MS. A timer is put into the bucket of its deadline and keeps
+ * the number of full wheel rounds it has to wait. At each tick we process only the bucket of that tick.
+ */
+public class TimingWheelTimer implements Timer {
+    private static final Logger log = LoggerFactory.getLogger(TimingWheelTimer.class);
+
+    // Same resolution as the FrameRateTimer
+    public static final long TICK_MS = MasterTimer.FRAME_INTERVAL_MS;
+    // Timers up to 51.2 sec fit into one round
+    private static final int WHEEL_SIZE = 512;
+
+    // Shared by all timers, ticked by its own daemon thread
+    private static final Wheel defaultWheel = new Wheel(System::nanoTime);
+
+    static {
+        defaultWheel.start();
+    }
+
+    private final Wheel wheel;
+    private Runnable runnable;
+    private long interval;
+    private boolean isPeriodically;
+    private volatile boolean stopped;
+
+    // Only accessed when holding the wheel lock
+    private TimingWheelTimer previous;
+    private TimingWheelTimer next;
+    private int bucketIndex = -1;
+    private long remainingRounds;
+
+    public TimingWheelTimer() {
+        this(defaultWheel);
+    }
+
+    @VisibleForTesting
+    TimingWheelTimer(Wheel wheel) {
+        this.wheel = wheel;
+    }
+
+    @Override
+    public Timer runLater(Duration delay, Runnable runnable) {
+        this.interval = delay.toMillis();
+        this.runnable = runnable;
+        wheel.schedule(this);
+        return this;
+    }
+
+    @Override
+    public Timer runPeriodically(Duration interval, Runnable runnable) {
+        this.interval = interval.toMillis();
+        this.runnable = runnable;
+        isPeriodically = true;
+        wheel.schedule(this);
+        return this;
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        wheel.cancel(this);
+    }
+
+    // Called on the UserThread
+    private void fire() {
+        if (!stopped) {
+            try {
+                runnable.run();
+                if (isPeriodically && !stopped)
+                    wheel.schedule(this);
+                else
+                    stopped = true;
+            } catch (Throwable t) {
+                // We don't rethrow as the other timers due at that tick would not get called
+                log.error(t.getMessage());
+                t.printStackTrace();
+                stop();
+            }
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Wheel
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @VisibleForTesting
+    static final class Wheel {
+        // Head of a doubly linked list of timers per bucket
+        private final TimingWheelTimer[] buckets = new TimingWheelTimer[WHEEL_SIZE];
+        private final LongSupplier nanoTimeSupplier;
+        private final long startNanos;
+        // Number of the next tick we need to process
+        private long currentTick;
+
+        // Tests pass their own clock and call onTick themselves
+        Wheel(LongSupplier nanoTimeSupplier) {
+            this.nanoTimeSupplier = nanoTimeSupplier;
+            startNanos = nanoTimeSupplier.getAsLong();
+        }
+
+        void start() {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("TimingWheelTimer").setDaemon(true).build());
+            executor.scheduleAtFixedRate(this::onTick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void schedule(TimingWheelTimer timer) {
+            unlink(timer);
+            // We round up so a timer never fires too early
+            long deadlineTick = (getElapsedMillis() + timer.interval + TICK_MS - 1) / TICK_MS;
+            // The timer must not end up in a bucket we have processed already
+            deadlineTick = Math.max(deadlineTick, currentTick);
+            timer.bucketIndex = (int) (deadlineTick % WHEEL_SIZE);
+            timer.remainingRounds = (deadlineTick - currentTick) / WHEEL_SIZE;
+
+            TimingWheelTimer head = buckets[timer.bucketIndex];
+            timer.previous = null;
+            timer.next = head;
+            if (head != null)
+                head.previous = timer;
+            buckets[timer.bucketIndex] = timer;
+        }
+
+        synchronized void cancel(TimingWheelTimer timer) {
+            unlink(timer);
+        }
+
+        // Called from the scheduler thread
+        void onTick() {
+            List<TimingWheelTimer> dueTimers = collectDueTimers();
+            if (!dueTimers.isEmpty())
+                UserThread.execute(() -> dueTimers.stream().forEach(TimingWheelTimer::fire));
+        }
+
+        private synchronized List<TimingWheelTimer> collectDueTimers() {
+            List<TimingWheelTimer> dueTimers = new ArrayList<>();
+            long elapsedTicks = getElapsedMillis() / TICK_MS;
+            // We catch up with the ticks we missed
+            while (currentTick <= elapsedTicks) {
+                TimingWheelTimer timer = buckets[(int) (currentTick % WHEEL_SIZE)];
+                while (timer != null) {
+                    TimingWheelTimer next = timer.next;
+                    if (timer.remainingRounds <= 0) {
+                        unlink(timer);
+                        dueTimers.add(timer);
+                    } else {
+                        timer.remainingRounds--;
+                    }
+                    timer = next;
+                }
+                currentTick++;
+            }
+            return dueTimers;
+        }
+
+        private void unlink(TimingWheelTimer timer) {
+            if (timer.bucketIndex < 0)
+                return;
+
+            if (timer.previous != null)
+                timer.previous.next = timer.next;
+            else
+                buckets[timer.bucketIndex] = timer.next;
+            if (timer.next != null)
+                timer.next.previous = timer.previous;
+
+            timer.previous = null;
+            timer.next = null;
+            timer.bucketIndex = -1;
+        }
+
+        private long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - startNanos);
+        }
+    }
+}
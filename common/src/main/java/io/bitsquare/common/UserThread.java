@@ -21,6 +21,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.time.Duration;
 import java.util.Random;
@@ -30,6 +31,8 @@ import java.util.concurrent.TimeUnit;
 public class UserThread {
     private static final Logger log = LoggerFactory.getLogger(UserThread.class);
     private static Class<? extends Timer> timerClass;
+    // We look up the constructor only once as timers get created very often
+    private static volatile Constructor<? extends Timer> timerConstructor;
 
     public static Executor getExecutor() {
         return executor;
@@ -41,6 +44,7 @@ public class UserThread {
 
     public static void setTimerClass(Class<? extends Timer> timerClass) {
         UserThread.timerClass = timerClass;
+        UserThread.timerConstructor = null;
     }
 
     static {
@@ -84,7 +88,12 @@ public class UserThread {
 
     private static Timer getTimer() {
         try {
-            return timerClass.getDeclaredConstructor().newInstance();
+            Constructor<? extends Timer> constructor = timerConstructor;
+            if (constructor == null) {
+                constructor = timerClass.getDeclaredConstructor();
+                timerConstructor = constructor;
+            }
+            return constructor.newInstance();
         } catch (InstantiationException | NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
             String message = "Could not instantiate timer bsTimerClass=" + timerClass;
             log.error(message);
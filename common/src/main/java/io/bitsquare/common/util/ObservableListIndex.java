@@ -0,0 +1,65 @@
+package io.bitsquare.common.util;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Hash index over the elements of an ObservableList by a key (e.g. the trade id), so lookups don't need to scan the
+ * list. It is kept in sync with the list by a ListChangeListener, so it must be accessed from the thread which
+ * changes the list. The key of an element must not change while it is in the list.
+ * <p>
+ * Several elements can have the same key, get returns the first one we have added.
+ */
+public final class ObservableListIndex<K, V> {
+    private final Function<? super V, ? extends K> keyFunction;
+    private final Map<K, List<V>> valuesByKey = new HashMap<>();
+
+    public ObservableListIndex(ObservableList<V> list, Function<? super V, ? extends K> keyFunction) {
+        this.keyFunction = keyFunction;
+        list.stream().forEach(this::add);
+        list.addListener((ListChangeListener<V>) change -> {
+            while (change.next()) {
+                change.getRemoved().stream().forEach(this::remove);
+                change.getAddedSubList().stream().forEach(this::add);
+            }
+        });
+    }
+
+    public Optional<V> get(K key) {
+        List<V> values = valuesByKey.get(key);
+        return values != null ? Optional.of(values.get(0)) : Optional.<V>empty();
+    }
+
+    public List<V> getAll(K key) {
+        List<V> values = valuesByKey.get(key);
+        return values != null ? new ArrayList<>(values) : new ArrayList<>();
+    }
+
+    public boolean containsKey(K key) {
+        return valuesByKey.containsKey(key);
+    }
+
+    private void add(V value) {
+        K key = keyFunction.apply(value);
+        List<V> values = valuesByKey.get(key);
+        if (values == null) {
+            // Mostly there is only one element per key
+            values = new ArrayList<>(1);
+            valuesByKey.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private void remove(V value) {
+        K key = keyFunction.apply(value);
+        List<V> values = valuesByKey.get(key);
+        if (values != null) {
+            values.remove(value);
+            if (values.isEmpty())
+                valuesByKey.remove(key);
+        }
+    }
+}
@@ -88,9 +88,11 @@ public class FileManager<T> {
 
     /**
      * Actually write the wallet file to disk, using an atomic rename when possible. Runs on the current thread.
+     *
+     * @return True if the file was written successfully
      */
-    public void saveNow(T serializable) {
-        saveNowInternal(serializable);
+    public boolean saveNow(T serializable) {
+        return saveNowInternal(serializable);
     }
 
     /**
@@ -110,6 +112,10 @@ public class FileManager<T> {
     }
 
     public synchronized T read(File file) throws IOException, ClassNotFoundException {
+        return readFromFile(file);
+    }
+
+    static <T> T readFromFile(File file) throws IOException, ClassNotFoundException {
         log.debug("read" + file);
         try (final FileInputStream fileInputStream = new FileInputStream(file);
              final ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream)) {
@@ -175,13 +181,19 @@ public class FileManager<T> {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    private void saveNowInternal(T serializable) {
+    private boolean saveNowInternal(T serializable) {
         long now = System.currentTimeMillis();
-        saveToFile(serializable, dir, storageFile);
+        boolean result = saveToFile(serializable, dir, storageFile);
         UserThread.execute(() -> log.trace("Save {} completed in {}msec", storageFile, System.currentTimeMillis() - now));
+        return result;
+    }
+
+    private synchronized boolean saveToFile(T serializable, File dir, File storageFile) {
+        return writeToFile(serializable, dir, storageFile);
     }
 
-    private synchronized void saveToFile(T serializable, File dir, File storageFile) {
+    // Writes to a temp file and renames it, so the storageFile is never left partly written
+    static boolean writeToFile(Object serializable, File dir, File storageFile) {
         File tempFile = null;
         FileOutputStream fileOutputStream = null;
         ObjectOutputStream objectOutputStream = null;
@@ -210,10 +222,12 @@ public class FileManager<T> {
             objectOutputStream.close();
 
             renameTempFileToFile(tempFile, storageFile);
+            return true;
         } catch (Throwable t) {
             log.debug("storageFile " + storageFile.toString());
             t.printStackTrace();
             log.error("Error at saveToFile: " + t.getMessage());
+            return false;
         } finally {
             if (tempFile != null && tempFile.exists()) {
                 log.warn("Temp file still exists after failed save. storageFile=" + storageFile);
@@ -234,7 +248,7 @@ public class FileManager<T> {
         }
     }
 
-    private synchronized void renameTempFileToFile(File tempFile, File file) throws IOException {
+    static void renameTempFileToFile(File tempFile, File file) throws IOException {
         if (Utils.isWindows()) {
             // Work around an issue on Windows whereby you can't rename over existing files.
             final File canonical = file.getCanonicalFile();
@@ -0,0 +1,271 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.bitsquare.common.util.Utilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * StorageBackend which writes each record to its own file in a directory named after the storage.
+ * <p>
+ * The file names start with a sequence number, which gives us the order of the records at reading. A record is
+ * written with the same temp file and rename as in the FileManager, so a crash leaves either the old or the new
+ * version of a record. Pending writes are done at shut down.
+ * <p>
+ * All backends share one executor and one shut down hook. A record which cannot be read gets backed up and is
+ * reported to the database corruption handler of the Storage.
+ */
+public class FileStorageBackend<V extends Serializable> implements StorageBackend<V> {
+    private static final Logger log = LoggerFactory.getLogger(FileStorageBackend.class);
+
+    private static final ScheduledThreadPoolExecutor executor =
+            Utilities.getScheduledThreadPoolExecutor("FileStorageBackend", 1, 10, 5);
+    private static final Set<FileStorageBackend<?>> backends = new CopyOnWriteArraySet<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(FileStorageBackend::shutDownAll));
+    }
+
+    private final File dir;
+    private final File recordsDir;
+    // Records which are queued up for save by file name
+    private final Map<String, V> pendingRecords = new ConcurrentHashMap<>();
+    private final Map<String, String> fileNameByKey = new HashMap<>();
+    private long nextSequenceNr;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public FileStorageBackend(File dir, String name) {
+        this.dir = dir;
+        recordsDir = new File(dir, name + "_records");
+        backends.add(this);
+    }
+
+    /**
+     * Writes the pending records of all backends. Called by the shut down hook, writes requested later are dropped.
+     */
+    public static void shutDownAll() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Delayed tasks are dropped at shut down, so we write the remaining records here
+        backends.stream().forEach(FileStorageBackend::writePendingRecords);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // StorageBackend implementation
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean exists() {
+        return recordsDir.exists();
+    }
+
+    @Override
+    public synchronized List<V> readAll() {
+        List<V> records = new ArrayList<>();
+        File[] files = recordsDir.listFiles();
+        if (files == null)
+            return records;
+
+        // Temp files of interrupted writes don't match the record file names and are ignored
+        List<File> recordFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && file.getName().matches("\\d+_.+"))
+                recordFiles.add(file);
+        }
+        recordFiles.sort(Comparator.comparingLong(FileStorageBackend::getSequenceNr));
+
+        for (File file : recordFiles) {
+            String fileName = file.getName();
+            nextSequenceNr = Math.max(nextSequenceNr, getSequenceNr(file) + 1);
+            try {
+                V record = FileManager.readFromFile(file);
+                records.add(record);
+                fileNameByKey.put(fileName.substring(fileName.indexOf('_') + 1), fileName);
+            } catch (Throwable t) {
+                log.error("Cannot read record " + file + ". We make a backup and remove the file. " + t.getMessage());
+                String backupFileName = recordsDir.getName() + "_" + fileName;
+                backupCorruptedFile(file, backupFileName);
+                Storage.notifyFileCorrupted(backupFileName);
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized boolean importAll(List<String> keys, List<V> records) {
+        File importDir = new File(dir, recordsDir.getName() + ".import");
+        deleteDir(importDir);
+
+        Map<String, String> importedFileNameByKey = new HashMap<>();
+        long sequenceNr = nextSequenceNr;
+        for (int i = 0; i < records.size(); i++) {
+            String sanitizedKey = getSanitizedKey(keys.get(i));
+            String fileName = getFileName(sequenceNr++, sanitizedKey);
+            if (!FileManager.writeToFile(records.get(i), importDir, new File(importDir, fileName))) {
+                deleteDir(importDir);
+                return false;
+            }
+            importedFileNameByKey.put(sanitizedKey, fileName);
+        }
+
+        // We rename the directory at the end, so an interrupted import leaves no partial records
+        if (!importDir.exists() && !importDir.mkdir()) {
+            log.warn("make dir failed");
+            return false;
+        }
+        if (!importDir.renameTo(recordsDir)) {
+            log.error("Failed to rename " + importDir + " to " + recordsDir);
+            deleteDir(importDir);
+            return false;
+        }
+
+        nextSequenceNr = sequenceNr;
+        fileNameByKey.putAll(importedFileNameByKey);
+        return true;
+    }
+
+    @Override
+    public synchronized void add(String key, V record) {
+        String sanitizedKey = getSanitizedKey(key);
+        if (!fileNameByKey.containsKey(sanitizedKey))
+            fileNameByKey.put(sanitizedKey, getFileName(nextSequenceNr++, sanitizedKey));
+
+        update(key, record, 0);
+    }
+
+    @Override
+    public synchronized void update(String key, V record, long delayInMilli) {
+        String fileName = fileNameByKey.get(getSanitizedKey(key));
+        if (fileName == null) {
+            log.trace("update called for a record which is not in the storage. key=" + key);
+            return;
+        }
+
+        if (pendingRecords.put(fileName, record) == null)
+            executor.schedule(() -> write(fileName), delayInMilli, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        String fileName = fileNameByKey.remove(getSanitizedKey(key));
+        if (fileName != null) {
+            pendingRecords.remove(fileName);
+            executor.execute(() -> {
+                File file = new File(recordsDir, fileName);
+                if (file.exists() && !file.delete())
+                    log.warn("Could not delete file: " + file);
+            });
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Synchronized as the pending records get also written by the thread calling flush or shutDownAll
+    private synchronized void write(String fileName) {
+        // The record might have been written already by a previous task or got removed
+        V record = pendingRecords.remove(fileName);
+        if (record != null)
+            FileManager.writeToFile(record, recordsDir, new File(recordsDir, fileName));
+    }
+
+    private void writePendingRecords() {
+        new ArrayList<>(pendingRecords.keySet()).stream().forEach(this::write);
+    }
+
+    // Waits for the tasks queued so far (e.g. removes) and writes the pending records without the delay.
+    // Unlike shutDownAll the shared executor keeps running.
+    @VisibleForTesting
+    void flush() {
+        try {
+            executor.submit(() -> {
+            }).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Waiting for the queued tasks failed. " + e.getMessage());
+        }
+        writePendingRecords();
+    }
+
+    private void backupCorruptedFile(File file, String backupFileName) {
+        File corruptedBackupDir = new File(Paths.get(dir.getAbsolutePath(), "backup_of_corrupted_data").toString());
+        if (!corruptedBackupDir.exists())
+            if (!corruptedBackupDir.mkdir())
+                log.warn("make dir failed");
+
+        try {
+            FileManager.renameTempFileToFile(file, new File(corruptedBackupDir, backupFileName));
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error(e.getMessage());
+            // We swallow Exception if backup fails
+        }
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete())
+                    log.warn("Could not delete file: " + file);
+            }
+        }
+        if (dir.exists() && !dir.delete())
+            log.warn("Could not delete dir: " + dir);
+    }
+
+    private static String getFileName(long sequenceNr, String sanitizedKey) {
+        return String.format("%010d_%s", sequenceNr, sanitizedKey);
+    }
+
+    private static long getSequenceNr(File file) {
+        String fileName = file.getName();
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.indexOf('_')));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // The keys are used in the file names
+    private static String getSanitizedKey(String key) {
+        return key.replaceAll("[^a-zA-Z0-9_.-]", "_");
+    }
+}
@@ -26,6 +26,7 @@ import javax.inject.Named;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -45,10 +46,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * As the data are small and it is just one read access the performance penalty is small and might be even worse to create and setup a thread for it.
  * <p>
  * The write operation used a background thread and supports a delayed write to avoid too many repeated write operations.
+ * <p>
+ * For lists of entities (e.g. trades) a StorageBackend can be used with initRecordBackend. Each entity is then stored
+ * as its own record, so a change of one entity does not write the whole list.
  */
 public class Storage<T extends Serializable> {
     private static final Logger log = LoggerFactory.getLogger(Storage.class);
     public static final String DIR_KEY = "storage.dir";
+    private static final long RECORD_SAVE_DELAY = 600;
 
     private static DataBaseCorruptionHandler databaseCorruptionHandler;
 
@@ -56,6 +61,12 @@ public class Storage<T extends Serializable> {
         Storage.databaseCorruptionHandler = databaseCorruptionHandler;
     }
 
+    // Also used for files we don't read with a Storage instance (e.g. the snapshot of the SequenceNumberJournal)
+    public static void notifyFileCorrupted(String fileName) {
+        if (databaseCorruptionHandler != null)
+            databaseCorruptionHandler.onFileCorrupted(fileName);
+    }
+
     public interface DataBaseCorruptionHandler {
         void onFileCorrupted(String fileName);
     }
@@ -65,6 +76,8 @@ public class Storage<T extends Serializable> {
     private File storageFile;
     private T serializable;
     private String fileName;
+    @Nullable
+    private StorageBackend<Serializable> recordBackend;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -137,6 +150,74 @@ public class Storage<T extends Serializable> {
     }
 
 
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Records
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Sets up a record backend with the given name.
+     *
+     * @return True if there are persisted records. If not the caller can import the records of the old storage file.
+     */
+    public boolean initRecordBackend(String name) {
+        recordBackend = new FileStorageBackend<>(dir, name);
+        return recordBackend.exists();
+    }
+
+    public <R extends Serializable> List<R> getPersistedRecords() {
+        checkNotNull(recordBackend, "recordBackend = null. Call initRecordBackend before using records.");
+        //noinspection unchecked
+        return (List<R>) recordBackend.readAll();
+    }
+
+    /**
+     * If the import succeeds the old storage file is renamed to <fileName>.migrated, so it is not read anymore but
+     * kept as a backup. If the import fails we don't use the record backend and save the whole object as before.
+     */
+    public void importRecords(List<String> keys, List<? extends Serializable> records) {
+        checkNotNull(recordBackend, "recordBackend = null. Call initRecordBackend before using records.");
+        long now = System.currentTimeMillis();
+        //noinspection unchecked
+        if (recordBackend.importAll(keys, (List<Serializable>) records)) {
+            log.info("Imported {} records of {} in {}msec", records.size(), fileName, System.currentTimeMillis() - now);
+            if (storageFile != null && storageFile.exists()) {
+                try {
+                    FileManager.renameTempFileToFile(storageFile, new File(dir, storageFile.getName() + ".migrated"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    log.error("Renaming the migrated storage file failed. " + e.getMessage());
+                    // We swallow Exception as the records are used anyway
+                }
+            }
+        } else {
+            log.error("Import of records failed. We keep the storage file " + fileName);
+            recordBackend = null;
+        }
+    }
+
+    public void addRecord(String key, Serializable record) {
+        if (recordBackend != null)
+            recordBackend.add(key, record);
+        else
+            queueUpForSave();
+    }
+
+    // Save delayed and on a background thread
+    public void queueUpForSave(String key, Serializable record) {
+        if (recordBackend != null)
+            recordBackend.update(key, record, RECORD_SAVE_DELAY);
+        else
+            queueUpForSave();
+    }
+
+    public void removeRecord(String key) {
+        if (recordBackend != null)
+            recordBackend.remove(key);
+        else
+            queueUpForSave();
+    }
+
+
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -169,8 +250,7 @@ public class Storage<T extends Serializable> {
                     log.error(e1.getMessage());
                     // We swallow Exception if backup fails
                 }
-                if (databaseCorruptionHandler != null)
-                    databaseCorruptionHandler.onFileCorrupted(storageFile.getName());
+                notifyFileCorrupted(storageFile.getName());
             }
         }
         return null;
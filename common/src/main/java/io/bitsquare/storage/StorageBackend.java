@@ -0,0 +1,59 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.storage;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Persists a collection of records each under its own key, so a change of one record writes only that record
+ * instead of the whole collection.
+ * <p>
+ * Reading is done at startup on the calling thread, writing on a background thread.
+ */
+public interface StorageBackend<V extends Serializable> {
+
+    /**
+     * @return True if the backend has persisted data, even if it holds no records
+     */
+    boolean exists();
+
+    /**
+     * @return The persisted records in the order they were added
+     */
+    List<V> readAll();
+
+    /**
+     * Writes all records at once on the calling thread. Either all records are written or none.
+     *
+     * @return True if the records were written successfully
+     */
+    boolean importAll(List<String> keys, List<V> records);
+
+    /**
+     * Adds a new record or updates an existing one.
+     */
+    void add(String key, V record);
+
+    /**
+     * Queues up a save of the record. Updates of records which have not been added or got removed are ignored.
+     */
+    void update(String key, V record, long delayInMilli);
+
+    void remove(String key);
+}
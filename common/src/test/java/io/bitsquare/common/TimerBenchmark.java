@@ -0,0 +1,55 @@
+package io.bitsquare.common;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Simple micro benchmark comparing the costs of starting and stopping timers with the FrameRateTimer and the
+ * TimingWheelTimer while a number of other timers are active (like at a broadcast storm at a seed node).
+ * Remove the @Ignore for running it, the numbers are only meaningful relative to each other.
+ */
+@Ignore
+public class TimerBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(TimerBenchmark.class);
+
+    private static final int ACTIVE_TIMERS = 2000;
+    private static final int ITERATIONS = 20_000;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    @Test
+    public void benchmarkStartStop() {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            run(FrameRateTimer::new);
+            run(TimingWheelTimer::new);
+        }
+
+        log.info("FrameRateTimer:   " + run(FrameRateTimer::new) + " ns per start/stop");
+        log.info("TimingWheelTimer: " + run(TimingWheelTimer::new) + " ns per start/stop");
+    }
+
+    private static long run(Supplier<Timer> timerSupplier) {
+        List<Timer> activeTimers = new ArrayList<>();
+        for (int i = 0; i < ACTIVE_TIMERS; i++)
+            activeTimers.add(timerSupplier.get().runLater(Duration.ofMinutes(10), () -> {
+            }));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Most timers are timeouts which get stopped before they fire
+            Timer timer = timerSupplier.get().runLater(Duration.ofSeconds(30), () -> {
+            });
+            timer.stop();
+        }
+        long duration = System.nanoTime() - start;
+
+        activeTimers.stream().forEach(Timer::stop);
+        return duration / ITERATIONS;
+    }
+}
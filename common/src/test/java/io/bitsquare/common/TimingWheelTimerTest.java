@@ -0,0 +1,113 @@
+package io.bitsquare.common;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTimerTest {
+    private static final long TICK_MS = TimingWheelTimer.TICK_MS;
+
+    private long nanoTime;
+    private TimingWheelTimer.Wheel wheel;
+    private Executor userThreadExecutor;
+
+    @Before
+    public void setup() {
+        // The due timers get called directly in the thread calling onTick
+        userThreadExecutor = UserThread.getExecutor();
+        UserThread.setExecutor(MoreExecutors.directExecutor());
+        nanoTime = 0;
+        wheel = new TimingWheelTimer.Wheel(() -> nanoTime);
+    }
+
+    @After
+    public void tearDown() {
+        UserThread.setExecutor(userThreadExecutor);
+    }
+
+    @Test
+    public void testNotBeforeDelay() {
+        List<Long> firedAt = new ArrayList<>();
+        new TimingWheelTimer(wheel).runLater(Duration.ofMillis(250), () -> firedAt.add(getElapsedMillis()));
+
+        advance(1000, 10);
+        assertEquals(1, firedAt.size());
+        assertTrue(firedAt.get(0) >= 250);
+        assertTrue(firedAt.get(0) <= 250 + TICK_MS);
+    }
+
+    @Test
+    public void testStopBeforeFiring() {
+        AtomicInteger count = new AtomicInteger();
+        Timer timer = new TimingWheelTimer(wheel).runLater(Duration.ofMillis(300), count::incrementAndGet);
+        advance(200, 10);
+        timer.stop();
+
+        advance(1000, 10);
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void testPeriodically() {
+        AtomicInteger count = new AtomicInteger();
+        Timer timer = new TimingWheelTimer(wheel).runPeriodically(Duration.ofMillis(200), count::incrementAndGet);
+
+        advance(190, 10);
+        assertEquals(0, count.get());
+        advance(810, 10);
+        assertEquals(5, count.get());
+
+        timer.stop();
+        advance(1000, 10);
+        assertEquals(5, count.get());
+    }
+
+    @Test
+    public void testDelayLongerThanOneRound() {
+        // One round of the wheel covers 51.2 sec
+        List<Long> firedAt = new ArrayList<>();
+        new TimingWheelTimer(wheel).runLater(Duration.ofSeconds(120), () -> firedAt.add(getElapsedMillis()));
+
+        advance(119_900, TICK_MS);
+        assertTrue(firedAt.isEmpty());
+        advance(200, TICK_MS);
+        assertEquals(1, firedAt.size());
+        assertTrue(firedAt.get(0) >= 120_000);
+    }
+
+    @Test
+    public void testCatchUpAfterMissedTicks() {
+        AtomicInteger count = new AtomicInteger();
+        new TimingWheelTimer(wheel).runLater(Duration.ofMillis(300), count::incrementAndGet);
+        new TimingWheelTimer(wheel).runLater(Duration.ofSeconds(5), count::incrementAndGet);
+        new TimingWheelTimer(wheel).runLater(Duration.ofSeconds(60), count::incrementAndGet);
+
+        // The scheduler thread did not get called for 10 sec, we get all timers due in that time at the next tick
+        advance(10_000, 10_000);
+        assertEquals(2, count.get());
+
+        advance(50_000, 10_000);
+        assertEquals(3, count.get());
+    }
+
+    private void advance(long millis, long stepMillis) {
+        for (long i = 0; i < millis; i += stepMillis) {
+            nanoTime += TimeUnit.MILLISECONDS.toNanos(stepMillis);
+            wheel.onTick();
+        }
+    }
+
+    private long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime);
+    }
+}
@@ -0,0 +1,36 @@
+package io.bitsquare.common.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ObservableListIndexTest {
+
+    @Test
+    public void testSyncWithList() {
+        ObservableList<String> list = FXCollections.observableArrayList("a1", "b1");
+        ObservableListIndex<Character, String> index = new ObservableListIndex<>(list, e -> e.charAt(0));
+        assertEquals("a1", index.get('a').get());
+        assertFalse(index.get('c').isPresent());
+
+        list.add("c1");
+        list.add("a2");
+        assertEquals("c1", index.get('c').get());
+        assertEquals(Arrays.asList("a1", "a2"), index.getAll('a'));
+
+        list.remove("a1");
+        assertEquals("a2", index.get('a').get());
+        list.remove("a2");
+        assertFalse(index.containsKey('a'));
+        assertTrue(index.getAll('a').isEmpty());
+
+        list.setAll("d1");
+        assertFalse(index.get('b').isPresent());
+        assertFalse(index.get('c').isPresent());
+        assertEquals("d1", index.get('d').get());
+    }
+}
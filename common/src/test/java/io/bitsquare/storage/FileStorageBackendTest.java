@@ -0,0 +1,205 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FileStorageBackendTest {
+    private static final String NAME = "TestList";
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("file_storage_backend_test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testImportAll() {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        assertFalse(backend.exists());
+        assertTrue(backend.importAll(Arrays.asList("c", "a", "b"), Arrays.asList("record c", "record a", "record b")));
+        assertTrue(backend.exists());
+        // The temp directory got renamed
+        assertFalse(getImportDir().exists());
+        assertEquals(3, getRecordsDir().listFiles().length);
+
+        assertEquals(Arrays.asList("record c", "record a", "record b"), new FileStorageBackend<String>(dir, NAME).readAll());
+    }
+
+    @Test
+    public void testImportAllEmptyList() {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        assertTrue(backend.importAll(Collections.emptyList(), Collections.emptyList()));
+
+        // We don't import again at the next start
+        FileStorageBackend<String> readBackend = new FileStorageBackend<>(dir, NAME);
+        assertTrue(readBackend.exists());
+        assertTrue(readBackend.readAll().isEmpty());
+    }
+
+    @Test
+    public void testImportAllFailure() {
+        FileStorageBackend<Serializable> backend = new FileStorageBackend<>(dir, NAME);
+        assertFalse(backend.importAll(Arrays.asList("a", "b"), Arrays.asList("record a", new NotSerializableRecord())));
+        // Nothing of the failed import is left, so we import again at the next start
+        assertFalse(backend.exists());
+        assertFalse(getImportDir().exists());
+    }
+
+    @Test
+    public void testImportAllAfterInterruptedImport() throws IOException {
+        // Simulates a crash during an import
+        File importDir = getImportDir();
+        assertTrue(importDir.mkdir());
+        assertTrue(new File(importDir, "0000000000_x").createNewFile());
+
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        assertFalse(backend.exists());
+        assertTrue(backend.importAll(Collections.singletonList("a"), Collections.singletonList("record a")));
+        assertEquals(Collections.singletonList("record a"), new FileStorageBackend<String>(dir, NAME).readAll());
+    }
+
+    @Test
+    public void testReadAllOrder() {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        backend.importAll(Collections.emptyList(), Collections.emptyList());
+        for (int i = 12; i > 0; i--)
+            backend.add("key" + i, "record" + i);
+        // An update keeps the position of the record
+        backend.update("key12", "record12 updated", 0);
+        backend.flush();
+
+        FileStorageBackend<String> readBackend = new FileStorageBackend<>(dir, NAME);
+        assertEquals(Arrays.asList("record12 updated", "record11", "record10", "record9", "record8", "record7",
+                "record6", "record5", "record4", "record3", "record2", "record1"), readBackend.readAll());
+
+        // New records are added after the persisted ones
+        readBackend.add("key0", "record0");
+        readBackend.flush();
+        assertEquals("record0", getLast(new FileStorageBackend<String>(dir, NAME).readAll()));
+    }
+
+    @Test
+    public void testCorruptedRecordGetsBackedUp() throws IOException {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        backend.importAll(Arrays.asList("a", "b"), Arrays.asList("record a", "record b"));
+
+        File corruptedFile = new File(getRecordsDir(), "0000000000_a");
+        assertTrue(corruptedFile.exists());
+        try (FileOutputStream fileOutputStream = new FileOutputStream(corruptedFile)) {
+            fileOutputStream.write(new byte[]{1, 2, 3});
+        }
+
+        List<String> corruptedFileNames = new ArrayList<>();
+        Storage.setDatabaseCorruptionHandler(corruptedFileNames::add);
+        try {
+            assertEquals(Collections.singletonList("record b"), new FileStorageBackend<String>(dir, NAME).readAll());
+        } finally {
+            Storage.setDatabaseCorruptionHandler(null);
+        }
+        assertFalse(corruptedFile.exists());
+        String backupFileName = getRecordsDir().getName() + "_0000000000_a";
+        assertTrue(new File(new File(dir, "backup_of_corrupted_data"), backupFileName).exists());
+        assertEquals(Collections.singletonList(backupFileName), corruptedFileNames);
+    }
+
+    @Test
+    public void testRemoveBeforeDelayedWrite() throws InterruptedException {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        backend.importAll(Collections.singletonList("a"), Collections.singletonList("record a"));
+        backend.update("a", "record a updated", 100);
+        backend.remove("a");
+        // An update after the remove must not bring the record back
+        backend.update("a", "record a updated again", 0);
+        // We let the delayed write run
+        Thread.sleep(300);
+        backend.flush();
+
+        assertTrue(new FileStorageBackend<String>(dir, NAME).readAll().isEmpty());
+    }
+
+    @Test
+    public void testAddAfterRemove() {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        backend.importAll(Arrays.asList("a", "b"), Arrays.asList("record a", "record b"));
+        backend.update("a", "record a updated", 200);
+        backend.remove("a");
+        backend.add("a", "record a added again");
+        backend.flush();
+
+        // The record got added again as the last one
+        assertEquals(Arrays.asList("record b", "record a added again"), new FileStorageBackend<String>(dir, NAME).readAll());
+    }
+
+    @Test
+    public void testFlushWritesPendingRecords() {
+        FileStorageBackend<String> backend = new FileStorageBackend<>(dir, NAME);
+        backend.importAll(Collections.singletonList("a"), Collections.singletonList("record a"));
+        // Several updates within the delay result in one write of the latest record
+        backend.update("a", "record a 1", 60 * 1000);
+        backend.update("a", "record a 2", 60 * 1000);
+        backend.flush();
+
+        assertEquals(Collections.singletonList("record a 2"), new FileStorageBackend<String>(dir, NAME).readAll());
+    }
+
+    private File getRecordsDir() {
+        return new File(dir, NAME + "_records");
+    }
+
+    private File getImportDir() {
+        return new File(dir, NAME + "_records.import");
+    }
+
+    private static <T> T getLast(List<T> list) {
+        return list.get(list.size() - 1);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File child : files)
+                delete(child);
+        file.delete();
+    }
+
+    private static final class NotSerializableRecord implements Serializable {
+        @SuppressWarnings("unused")
+        private final Object field = new Object();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StorageTest {
+    private static final String FILE_NAME = "TestList";
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("storage_test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testImportRecordsRenamesStorageFile() {
+        ArrayList<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+        assertTrue(FileManager.writeToFile(list, dir, new File(dir, FILE_NAME)));
+
+        Storage<ArrayList<String>> storage = new Storage<>(dir);
+        assertFalse(storage.initRecordBackend(FILE_NAME));
+        assertEquals(list, storage.initAndGetPersisted(new ArrayList<>(), FILE_NAME));
+        storage.importRecords(list, list);
+
+        // The old file is kept as a backup but not read anymore
+        assertFalse(new File(dir, FILE_NAME).exists());
+        assertTrue(new File(dir, FILE_NAME + ".migrated").exists());
+
+        Storage<ArrayList<String>> newStorage = new Storage<>(dir);
+        assertTrue(newStorage.initRecordBackend(FILE_NAME));
+        assertEquals(list, newStorage.getPersistedRecords());
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File child : files)
+                delete(child);
+        file.delete();
+    }
+}
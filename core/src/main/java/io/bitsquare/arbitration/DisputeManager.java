@@ -28,6 +28,7 @@ import io.bitsquare.btc.exceptions.TransactionVerificationException;
 import io.bitsquare.btc.exceptions.WalletException;
 import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.common.crypto.PubKeyRing;
+import io.bitsquare.common.util.ObservableListIndex;
 import io.bitsquare.crypto.DecryptedMsgWithPubKey;
 import io.bitsquare.p2p.BootstrapListener;
 import io.bitsquare.p2p.Message;
@@ -36,6 +37,7 @@ import io.bitsquare.p2p.P2PService;
 import io.bitsquare.p2p.messaging.SendMailboxMessageListener;
 import io.bitsquare.storage.Storage;
 import io.bitsquare.trade.Contract;
+import io.bitsquare.trade.TradableTxIndex;
 import io.bitsquare.trade.Trade;
 import io.bitsquare.trade.TradeManager;
 import io.bitsquare.trade.offer.OpenOffer;
@@ -54,7 +56,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
 
 public class DisputeManager {
     private static final Logger log = LoggerFactory.getLogger(DisputeManager.class);
@@ -65,9 +66,11 @@ public class DisputeManager {
     private final OpenOfferManager openOfferManager;
     private final P2PService p2PService;
     private final KeyRing keyRing;
+    private final TradableTxIndex tradableTxIndex;
     private final Storage<DisputeList<Dispute>> disputeStorage;
     private final DisputeList<Dispute> disputes;
     transient private final ObservableList<Dispute> disputesObservableList;
+    private final ObservableListIndex<String, Dispute> disputesByTradeId;
     private final String disputeInfo;
     private final BootstrapListener bootstrapListener;
     private final CopyOnWriteArraySet<DecryptedMsgWithPubKey> decryptedMailboxMessageWithPubKeys = new CopyOnWriteArraySet<>();
@@ -85,6 +88,7 @@ public class DisputeManager {
                           TradeManager tradeManager,
                           OpenOfferManager openOfferManager,
                           KeyRing keyRing,
+                          TradableTxIndex tradableTxIndex,
                           @Named("storage.dir") File storageDir) {
         this.p2PService = p2PService;
         this.tradeWalletService = tradeWalletService;
@@ -92,11 +96,14 @@ public class DisputeManager {
         this.tradeManager = tradeManager;
         this.openOfferManager = openOfferManager;
         this.keyRing = keyRing;
+        this.tradableTxIndex = tradableTxIndex;
 
         disputeStorage = new Storage<>(storageDir);
         disputes = new DisputeList<>(disputeStorage);
         disputesObservableList = FXCollections.observableArrayList(disputes);
         disputes.stream().forEach(e -> e.setStorage(getDisputeStorage()));
+        disputesByTradeId = new ObservableListIndex<>(disputesObservableList, Dispute::getTradeId);
+        tradableTxIndex.addDisputeList(disputesObservableList);
 
         disputeInfo = "Please note the basic rules for the dispute process:\n" +
                 "1. You need to respond to the arbitrators requests in between 2 days.\n" +
@@ -514,6 +521,7 @@ public class DisputeManager {
                                         // after successful publish we send peer the tx
 
                                         dispute.setDisputePayoutTxId(transaction.getHashAsString());
+                                        tradableTxIndex.invalidate();
                                         sendPeerPublishedPayoutTxMessage(transaction, dispute, contract);
                                     }
 
@@ -551,7 +559,10 @@ public class DisputeManager {
     // losing trader or in case of 50/50 the seller gets the tx sent from the winner or buyer
     private void onDisputedPayoutTxMessage(PeerPublishedPayoutTxMessage peerPublishedPayoutTxMessage) {
         Transaction transaction = tradeWalletService.addTransactionToWallet(peerPublishedPayoutTxMessage.transaction);
-        findOwnDispute(peerPublishedPayoutTxMessage.tradeId).ifPresent(dispute -> dispute.setDisputePayoutTxId(transaction.getHashAsString()));
+        findOwnDispute(peerPublishedPayoutTxMessage.tradeId).ifPresent(dispute -> {
+            dispute.setDisputePayoutTxId(transaction.getHashAsString());
+            tradableTxIndex.invalidate();
+        });
     }
 
 
@@ -585,15 +596,15 @@ public class DisputeManager {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private Optional<Dispute> findDispute(String tradeId, int traderId) {
-        return disputes.stream().filter(e -> e.getTradeId().equals(tradeId) && e.getTraderId() == traderId).findAny();
+        return disputesByTradeId.getAll(tradeId).stream().filter(e -> e.getTraderId() == traderId).findAny();
     }
 
     public Optional<Dispute> findOwnDispute(String tradeId) {
-        return disputes.stream().filter(e -> e.getTradeId().equals(tradeId)).findAny();
+        return disputesByTradeId.get(tradeId);
     }
 
     public List<Dispute> findDisputesByTradeId(String tradeId) {
-        return disputes.stream().filter(e -> e.getTradeId().equals(tradeId)).collect(Collectors.toList());
+        return disputesByTradeId.getAll(tradeId);
     }
 
 }
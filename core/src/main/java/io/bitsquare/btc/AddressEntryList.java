@@ -26,7 +26,10 @@ import org.bitcoinj.crypto.DeterministicKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The List supporting our persistence solution.
@@ -38,6 +41,8 @@ public final class AddressEntryList extends ArrayList<AddressEntry> implements P
 
     final transient private Storage<AddressEntryList> storage;
     transient private Wallet wallet;
+    // Lookup of the trade address entries, the list is only extended by the methods below
+    final transient private Map<String, AddressEntry> addressEntryByOfferId = new HashMap<>();
 
     // Persisted fields are in ArrayList superclass
 
@@ -56,6 +61,7 @@ public final class AddressEntryList extends ArrayList<AddressEntry> implements P
                 if (keyFromPubHash != null) {
                     addressEntry.setDeterministicKey(keyFromPubHash);
                     add(addressEntry);
+                    indexByOfferId(addressEntry);
                 } else {
                     log.warn("Key from addressEntry not found in that wallet " + addressEntry.toString());
                 }
@@ -70,6 +76,7 @@ public final class AddressEntryList extends ArrayList<AddressEntry> implements P
         log.trace("getNewAddressEntry called with offerId " + offerId);
         AddressEntry addressEntry = new AddressEntry(wallet.freshReceiveKey(), wallet.getParams(), context, offerId);
         add(addressEntry);
+        indexByOfferId(addressEntry);
         storage.queueUpForSave();
         return addressEntry;
     }
@@ -81,4 +88,14 @@ public final class AddressEntryList extends ArrayList<AddressEntry> implements P
         else
             return null;
     }
+
+    @Nullable
+    public AddressEntry getAddressEntryByOfferId(String offerId) {
+        return addressEntryByOfferId.get(offerId);
+    }
+
+    private void indexByOfferId(AddressEntry addressEntry) {
+        if (addressEntry.getOfferId() != null)
+            addressEntryByOfferId.putIfAbsent(addressEntry.getOfferId(), addressEntry);
+    }
 }
@@ -50,6 +50,7 @@ public class BitcoinModule extends AppModule {
 
         bind(AddressEntryList.class).in(Singleton.class);
         bind(TradeWalletService.class).in(Singleton.class);
+        bind(WalletEventDispatcher.class).in(Singleton.class);
         bind(WalletService.class).in(Singleton.class);
         bind(BlockchainService.class).in(Singleton.class);
         bind(PriceFeed.class).in(Singleton.class);
@@ -882,16 +882,6 @@ public class TradeWalletService {
         return walletAppKit.chain().getBestChainHeight();
     }
 
-    public void addBlockChainListener(BlockChainListener blockChainListener) {
-        checkNotNull(walletAppKit);
-        walletAppKit.chain().addListener(blockChainListener);
-    }
-
-    public void removeBlockChainListener(BlockChainListener blockChainListener) {
-        checkNotNull(walletAppKit);
-        walletAppKit.chain().removeListener(blockChainListener);
-    }
-
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Private methods
@@ -0,0 +1,235 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.btc;
+
+import io.bitsquare.btc.listeners.AddressConfidenceListener;
+import io.bitsquare.btc.listeners.BestBlockListener;
+import io.bitsquare.btc.listeners.TxConfidenceListener;
+import io.bitsquare.common.MasterTimer;
+import io.bitsquare.common.Timer;
+import io.bitsquare.common.UserThread;
+import org.bitcoinj.core.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the confidence changes of our transactions and the new blocks of the chain to the listeners of the
+ * application. The listeners are kept by txId and address, so a change only reaches the listeners of that tx, and the
+ * tx hash string is created once per change instead of once per listener.
+ * <p>
+ * Confidence changes come in bursts (at each new block for all our txs, and for each peer announcing a tx), so we
+ * collect them and deliver them once per frame with the latest confidence. New blocks are handled the same way, as
+ * they arrive at a high rate while the chain gets downloaded. Only one listener is registered at the block chain, so
+ * bitcoinj does not need to ask each view if a tx is relevant.
+ */
+// Run in UserThread
+public class WalletEventDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(WalletEventDispatcher.class);
+
+    private final Map<Address, CopyOnWriteArraySet<AddressConfidenceListener>> addressConfidenceListeners = new ConcurrentHashMap<>();
+    private final Map<String, CopyOnWriteArraySet<TxConfidenceListener>> txConfidenceListeners = new ConcurrentHashMap<>();
+    private final CopyOnWriteArraySet<BestBlockListener> bestBlockListeners = new CopyOnWriteArraySet<>();
+    private final BlockChainListener blockChainListener = new AbstractBlockChainListener() {
+        @Override
+        public void notifyNewBestBlock(StoredBlock block) throws VerificationException {
+            onNewBestBlock(block);
+        }
+
+        @Override
+        public void reorganize(StoredBlock splitPoint, List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks)
+                throws VerificationException {
+            if (chain != null)
+                onNewBestBlock(chain.getChainHead());
+        }
+    };
+
+    // Changes waiting for the next dispatch in the order we got them
+    private final Map<Sha256Hash, PendingConfidenceChange> pendingConfidenceChanges = new LinkedHashMap<>();
+    @Nullable
+    private StoredBlock pendingBestBlock;
+    @Nullable
+    private Timer dispatchTimer;
+    @Nullable
+    private AbstractBlockChain chain;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public WalletEventDispatcher() {
+    }
+
+    // Called when the wallet app kit is set up, also after a restore from seed words with a new chain
+    void setBlockChain(AbstractBlockChain chain) {
+        if (this.chain != null)
+            this.chain.removeListener(blockChainListener);
+        this.chain = chain;
+        chain.addListener(blockChainListener);
+    }
+
+    void shutDown() {
+        if (chain != null)
+            chain.removeListener(blockChainListener);
+        if (dispatchTimer != null)
+            dispatchTimer.stop();
+        pendingConfidenceChanges.clear();
+        pendingBestBlock = null;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Listener
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void addAddressConfidenceListener(AddressConfidenceListener listener) {
+        addListener(addressConfidenceListeners, listener.getAddress(), listener);
+    }
+
+    void removeAddressConfidenceListener(AddressConfidenceListener listener) {
+        removeListener(addressConfidenceListeners, listener.getAddress(), listener);
+    }
+
+    void addTxConfidenceListener(TxConfidenceListener listener) {
+        addListener(txConfidenceListeners, listener.getTxID(), listener);
+    }
+
+    void removeTxConfidenceListener(TxConfidenceListener listener) {
+        removeListener(txConfidenceListeners, listener.getTxID(), listener);
+    }
+
+    void addBestBlockListener(BestBlockListener listener) {
+        bestBlockListeners.add(listener);
+    }
+
+    void removeBestBlockListener(BestBlockListener listener) {
+        bestBlockListeners.remove(listener);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Events
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param addresses The addresses of the outputs and connected outputs of the tx
+     */
+    void onTransactionConfidenceChanged(Transaction tx, Set<Address> addresses) {
+        if (addressConfidenceListeners.isEmpty() && txConfidenceListeners.isEmpty())
+            return;
+
+        // The hash is cached in the tx, in contrast to the hash string
+        PendingConfidenceChange change = pendingConfidenceChanges.get(tx.getHash());
+        if (change == null)
+            pendingConfidenceChanges.put(tx.getHash(), new PendingConfidenceChange(tx, addresses));
+        else
+            change.addresses.addAll(addresses);
+        scheduleDispatch();
+    }
+
+    private void onNewBestBlock(StoredBlock block) {
+        if (bestBlockListeners.isEmpty())
+            return;
+
+        pendingBestBlock = block;
+        scheduleDispatch();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void scheduleDispatch() {
+        if (dispatchTimer == null)
+            dispatchTimer = UserThread.runAfter(this::dispatch, MasterTimer.FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void dispatch() {
+        dispatchTimer = null;
+
+        List<PendingConfidenceChange> changes = new ArrayList<>(pendingConfidenceChanges.values());
+        pendingConfidenceChanges.clear();
+        changes.stream().forEach(this::dispatchConfidenceChange);
+
+        if (pendingBestBlock != null) {
+            StoredBlock block = pendingBestBlock;
+            pendingBestBlock = null;
+            bestBlockListeners.stream().forEach(listener -> listener.onNewBestBlock(block));
+        }
+    }
+
+    private void dispatchConfidenceChange(PendingConfidenceChange change) {
+        TransactionConfidence confidence = change.tx.getConfidence();
+        change.addresses.stream()
+                .map(addressConfidenceListeners::get)
+                .filter(listeners -> listeners != null)
+                .forEach(listeners -> listeners.stream().forEach(listener ->
+                        listener.onTransactionConfidenceChanged(confidence)));
+
+        if (!txConfidenceListeners.isEmpty()) {
+            Set<TxConfidenceListener> listeners = txConfidenceListeners.get(change.tx.getHashAsString());
+            if (listeners != null)
+                listeners.stream().forEach(listener -> listener.onTransactionConfidenceChanged(confidence));
+        }
+    }
+
+    // A listener without key never gets called
+    private static <K, L> void addListener(Map<K, CopyOnWriteArraySet<L>> listenersByKey, @Nullable K key, L listener) {
+        if (key == null)
+            return;
+
+        listenersByKey.compute(key, (k, listeners) -> {
+            if (listeners == null)
+                listeners = new CopyOnWriteArraySet<>();
+            listeners.add(listener);
+            return listeners;
+        });
+    }
+
+    private static <K, L> void removeListener(Map<K, CopyOnWriteArraySet<L>> listenersByKey, @Nullable K key, L listener) {
+        if (key == null)
+            return;
+
+        listenersByKey.computeIfPresent(key, (k, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // PendingConfidenceChange
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class PendingConfidenceChange {
+        final Transaction tx;
+        final Set<Address> addresses;
+
+        PendingConfidenceChange(Transaction tx, Set<Address> addresses) {
+            this.tx = tx;
+            this.addresses = new HashSet<>(addresses);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Service;
 import io.bitsquare.btc.listeners.AddressConfidenceListener;
 import io.bitsquare.btc.listeners.BalanceListener;
+import io.bitsquare.btc.listeners.BestBlockListener;
 import io.bitsquare.btc.listeners.TxConfidenceListener;
 import io.bitsquare.common.Timer;
 import io.bitsquare.common.UserThread;
@@ -69,15 +70,21 @@ public class WalletService {
     public static final String PREFIX_KEY = "wallet.prefix";
     private static final long STARTUP_TIMEOUT_SEC = 60;
 
-    private final CopyOnWriteArraySet<AddressConfidenceListener> addressConfidenceListeners = new CopyOnWriteArraySet<>();
-    private final CopyOnWriteArraySet<TxConfidenceListener> txConfidenceListeners = new CopyOnWriteArraySet<>();
     private final CopyOnWriteArraySet<BalanceListener> balanceListeners = new CopyOnWriteArraySet<>();
+    // Balance of the spend candidates per address. Accessed only from the UserThread (wallet events and
+    // queries from the UI). Rebuilt once per wallet event, so balance lookups don't scan all outputs.
+    private final Map<Address, Coin> balanceByAddress = new HashMap<>();
+    private boolean balanceIndexDirty = true;
+    // Transactions per address of their outputs and connected outputs. Accessed only from the UserThread.
+    private final Map<Address, Set<Transaction>> transactionsByAddress = new HashMap<>();
+    private boolean transactionIndexDirty = true;
 
     private final DownloadListener downloadListener = new DownloadListener();
     private final WalletEventListener walletEventListener = new BitsquareWalletEventListener();
 
     private final RegTestHost regTestHost;
     private final TradeWalletService tradeWalletService;
+    private final WalletEventDispatcher walletEventDispatcher;
     private final AddressEntryList addressEntryList;
     private final NetworkParameters params;
     private final File walletDir;
@@ -97,10 +104,12 @@ public class WalletService {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     @Inject
-    public WalletService(RegTestHost regTestHost, TradeWalletService tradeWalletService, AddressEntryList addressEntryList, UserAgent userAgent,
-                         @Named(DIR_KEY) File walletDir, Preferences preferences) {
+    public WalletService(RegTestHost regTestHost, TradeWalletService tradeWalletService, WalletEventDispatcher walletEventDispatcher,
+                         AddressEntryList addressEntryList, UserAgent userAgent, @Named(DIR_KEY) File walletDir,
+                         Preferences preferences) {
         this.regTestHost = regTestHost;
         this.tradeWalletService = tradeWalletService;
+        this.walletEventDispatcher = walletEventDispatcher;
         this.addressEntryList = addressEntryList;
         this.params = preferences.getBitcoinNetwork().getParameters();
         this.walletDir = new File(walletDir, "bitcoin");
@@ -141,6 +150,9 @@ public class WalletService {
 
                 wallet = walletAppKit.wallet();
                 wallet.addEventListener(walletEventListener);
+                walletEventDispatcher.setBlockChain(walletAppKit.chain());
+                balanceIndexDirty = true;
+                transactionIndexDirty = true;
 
                 addressEntryList.onWalletReady(wallet);
                 arbitratorAddressEntry = addressEntryList.getArbitratorAddressEntry();
@@ -247,6 +259,7 @@ public class WalletService {
     public void shutDown() {
         if (wallet != null)
             wallet.removeEventListener(walletEventListener);
+        walletEventDispatcher.shutDown();
 
         if (walletAppKit != null) {
             try {
@@ -280,19 +293,27 @@ public class WalletService {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public void addAddressConfidenceListener(AddressConfidenceListener listener) {
-        addressConfidenceListeners.add(listener);
+        walletEventDispatcher.addAddressConfidenceListener(listener);
     }
 
     public void removeAddressConfidenceListener(AddressConfidenceListener listener) {
-        addressConfidenceListeners.remove(listener);
+        walletEventDispatcher.removeAddressConfidenceListener(listener);
     }
 
     public void addTxConfidenceListener(TxConfidenceListener listener) {
-        txConfidenceListeners.add(listener);
+        walletEventDispatcher.addTxConfidenceListener(listener);
     }
 
     public void removeTxConfidenceListener(TxConfidenceListener listener) {
-        txConfidenceListeners.remove(listener);
+        walletEventDispatcher.removeTxConfidenceListener(listener);
+    }
+
+    public void addBestBlockListener(BestBlockListener listener) {
+        walletEventDispatcher.addBestBlockListener(listener);
+    }
+
+    public void removeBestBlockListener(BestBlockListener listener) {
+        walletEventDispatcher.removeBestBlockListener(listener);
     }
 
     public void addBalanceListener(BalanceListener listener) {
@@ -317,11 +338,9 @@ public class WalletService {
     }
 
     public AddressEntry getAddressEntryByOfferId(String offerId) {
-        Optional<AddressEntry> addressEntry = getAddressEntryList().stream()
-                .filter(e -> offerId.equals(e.getOfferId()))
-                .findAny();
-        if (addressEntry.isPresent())
-            return addressEntry.get();
+        AddressEntry addressEntry = addressEntryList.getAddressEntryByOfferId(offerId);
+        if (addressEntry != null)
+            return addressEntry;
         else
             return addressEntryList.getNewAddressEntry(AddressEntry.Context.TRADE, offerId);
     }
@@ -338,40 +357,59 @@ public class WalletService {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public TransactionConfidence getConfidenceForAddress(Address address) {
-        List<TransactionConfidence> transactionConfidenceList = new ArrayList<>();
-        if (wallet != null) {
-            Set<Transaction> transactions = wallet.getTransactions(true);
-            if (transactions != null) {
-                transactionConfidenceList.addAll(transactions.stream().map(tx ->
-                        getTransactionConfidence(tx, address)).collect(Collectors.toList()));
-            }
-        }
-        return getMostRecentConfidence(transactionConfidenceList);
+        if (wallet == null)
+            return null;
+
+        if (transactionIndexDirty)
+            updateTransactionIndex();
+        Set<Transaction> transactions = transactionsByAddress.get(address);
+        if (transactions == null)
+            return null;
+
+        return getMostRecentConfidence(transactions.stream()
+                .map(Transaction::getConfidence)
+                .collect(Collectors.toList()));
     }
 
     public TransactionConfidence getConfidenceForTxId(String txId) {
-        if (wallet != null) {
-            Set<Transaction> transactions = wallet.getTransactions(true);
-            for (Transaction tx : transactions) {
-                if (tx.getHashAsString().equals(txId))
+        if (wallet != null && txId != null) {
+            try {
+                Transaction tx = wallet.getTransaction(Sha256Hash.wrap(txId));
+                if (tx != null)
                     return tx.getConfidence();
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid txId: " + txId);
             }
         }
         return null;
     }
 
-    private TransactionConfidence getTransactionConfidence(Transaction tx, Address address) {
-        List<TransactionOutput> mergedOutputs = getOutputsWithConnectedOutputs(tx);
-        List<TransactionConfidence> transactionConfidenceList = new ArrayList<>();
+    private void updateTransactionIndex() {
+        transactionsByAddress.clear();
+        wallet.getTransactions(true).stream().forEach(this::indexTransaction);
+        transactionIndexDirty = false;
+    }
 
-        mergedOutputs.stream().filter(e -> e.getScriptPubKey().isSentToAddress() ||
-                e.getScriptPubKey().isPayToScriptHash()).forEach(transactionOutput -> {
-            Address outputAddress = transactionOutput.getScriptPubKey().getToAddress(params);
-            if (address.equals(outputAddress)) {
-                transactionConfidenceList.add(tx.getConfidence());
+    // Returns the addresses of the tx. Connected outputs might be known only later, so we index a tx again at
+    // each event.
+    private Set<Address> indexTransaction(Transaction tx) {
+        Set<Address> addresses = getAddresses(tx);
+        addresses.stream().forEach(address -> {
+            Set<Transaction> transactions = transactionsByAddress.get(address);
+            if (transactions == null) {
+                transactions = new HashSet<>();
+                transactionsByAddress.put(address, transactions);
             }
+            transactions.add(tx);
         });
-        return getMostRecentConfidence(transactionConfidenceList);
+        return addresses;
+    }
+
+    private Set<Address> getAddresses(Transaction tx) {
+        return getOutputsWithConnectedOutputs(tx).stream()
+                .map(this::getToAddress)
+                .filter(address -> address != null)
+                .collect(Collectors.toSet());
     }
 
 
@@ -423,19 +461,44 @@ public class WalletService {
     }
 
     public Coin getBalanceForAddress(Address address) {
-        return wallet != null ? getBalance(wallet.calculateAllSpendCandidates(), address) : Coin.ZERO;
-    }
-
-    private Coin getBalance(List<TransactionOutput> transactionOutputs, Address address) {
-        Coin balance = Coin.ZERO;
-        for (TransactionOutput transactionOutput : transactionOutputs) {
-            if (transactionOutput.getScriptPubKey().isSentToAddress() || transactionOutput.getScriptPubKey().isPayToScriptHash()) {
-                Address addressOutput = transactionOutput.getScriptPubKey().getToAddress(params);
-                if (addressOutput.equals(address))
-                    balance = balance.add(transactionOutput.getValue());
+        if (wallet == null)
+            return Coin.ZERO;
+
+        if (balanceIndexDirty)
+            updateBalanceIndex();
+        Coin balance = balanceByAddress.get(address);
+        return balance != null ? balance : Coin.ZERO;
+    }
+
+    // Returns the addresses whose balance has changed
+    private Set<Address> updateBalanceIndex() {
+        Map<Address, Coin> previousBalanceByAddress = new HashMap<>(balanceByAddress);
+        balanceByAddress.clear();
+        for (TransactionOutput transactionOutput : wallet.calculateAllSpendCandidates()) {
+            Address address = getToAddress(transactionOutput);
+            if (address != null) {
+                Coin balance = balanceByAddress.get(address);
+                balanceByAddress.put(address, balance != null ? balance.add(transactionOutput.getValue()) :
+                        transactionOutput.getValue());
             }
         }
-        return balance;
+        balanceIndexDirty = false;
+
+        Set<Address> changedAddresses = new HashSet<>();
+        balanceByAddress.entrySet().stream()
+                .filter(e -> !e.getValue().equals(previousBalanceByAddress.remove(e.getKey())))
+                .forEach(e -> changedAddresses.add(e.getKey()));
+        // The remaining addresses have no spend candidates anymore
+        changedAddresses.addAll(previousBalanceByAddress.keySet());
+        return changedAddresses;
+    }
+
+    @Nullable
+    private Address getToAddress(TransactionOutput transactionOutput) {
+        if (transactionOutput.getScriptPubKey().isSentToAddress() || transactionOutput.getScriptPubKey().isPayToScriptHash())
+            return transactionOutput.getScriptPubKey().getToAddress(params);
+        else
+            return null;
     }
 
 
@@ -667,30 +730,44 @@ public class WalletService {
         }
 
         @Override
-        public void onTransactionConfidenceChanged(Wallet wallet, Transaction tx) {
-            for (AddressConfidenceListener addressConfidenceListener : addressConfidenceListeners) {
-                List<TransactionConfidence> transactionConfidenceList = new ArrayList<>();
-                transactionConfidenceList.add(getTransactionConfidence(tx, addressConfidenceListener.getAddress()));
+        public void onReorganize(Wallet wallet) {
+            updateBalanceIndex();
+            transactionIndexDirty = true;
+        }
 
-                TransactionConfidence transactionConfidence = getMostRecentConfidence(transactionConfidenceList);
-                addressConfidenceListener.onTransactionConfidenceChanged(transactionConfidence);
-            }
+        @Override
+        public void onWalletChanged(Wallet wallet) {
+            // Covers changes we don't get a coins event for (e.g. a tx got dead), we rebuild the index at the next
+            // balance lookup
+            balanceIndexDirty = true;
+        }
 
-            txConfidenceListeners.stream()
-                    .filter(txConfidenceListener -> tx.getHashAsString().equals(txConfidenceListener.getTxID()))
-                    .forEach(txConfidenceListener ->
-                            txConfidenceListener.onTransactionConfidenceChanged(tx.getConfidence()));
+        @Override
+        public void onTransactionConfidenceChanged(Wallet wallet, Transaction tx) {
+            // If the index is dirty the tx gets indexed at the rebuild
+            Set<Address> addresses = transactionIndexDirty ? getAddresses(tx) : indexTransaction(tx);
+            walletEventDispatcher.onTransactionConfidenceChanged(tx, addresses);
         }
 
         private void notifyBalanceListeners(Transaction tx) {
-            for (BalanceListener balanceListener : balanceListeners) {
-                Coin balance;
-                if (balanceListener.getAddress() != null)
-                    balance = getBalanceForAddress(balanceListener.getAddress());
-                else
-                    balance = getAvailableBalance();
+            if (!transactionIndexDirty)
+                indexTransaction(tx);
+
+            // The tx is already applied to the wallet, so we rebuild the index once for all listeners
+            Set<Address> touchedAddresses = updateBalanceIndex();
+            // A listener on an address of the tx gets notified even if the balance did not change (e.g. funds
+            // received and spent in the same block), as it was done before the index
+            getOutputsWithConnectedOutputs(tx).stream()
+                    .map(WalletService.this::getToAddress)
+                    .filter(address -> address != null)
+                    .forEach(touchedAddresses::add);
 
-                balanceListener.onBalanceChanged(balance, tx);
+            for (BalanceListener balanceListener : balanceListeners) {
+                Address address = balanceListener.getAddress();
+                if (address == null)
+                    balanceListener.onBalanceChanged(getAvailableBalance(), tx);
+                else if (touchedAddresses.contains(address))
+                    balanceListener.onBalanceChanged(getBalanceForAddress(address), tx);
             }
         }
     }
@@ -28,7 +28,13 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Each tradable is persisted as a record with its id as key, so the ids of the tradables in one list must be unique.
+ * A tradable added with the id of another one would overwrite the record of the other one.
+ */
 public final class TradableList<T extends Tradable> extends ArrayList<T> implements Persistable {
     // That object is saved to disc. We need to take care of changes to not break deserialization.
     private static final long serialVersionUID = Version.LOCAL_DB_VERSION;
@@ -48,9 +54,17 @@ public final class TradableList<T extends Tradable> extends ArrayList<T> impleme
     public TradableList(Storage<TradableList<T>> storage, String fileName) {
         this.storage = storage;
 
-        TradableList persisted = storage.initAndGetPersisted(this, fileName);
-        if (persisted != null) {
+        // Each tradable is stored as its own record, so a change of one trade does not write the whole list
+        if (storage.initRecordBackend(fileName)) {
+            List<T> persisted = storage.getPersistedRecords();
             this.addAll(persisted);
+        } else {
+            // We import the list from the old storage file
+            TradableList persisted = storage.initAndGetPersisted(this, fileName);
+            if (persisted != null) {
+                this.addAll(persisted);
+            }
+            storage.importRecords(this.stream().map(Tradable::getId).collect(Collectors.toList()), this);
         }
         observableList = FXCollections.observableArrayList(this);
     }
@@ -67,7 +81,7 @@ public final class TradableList<T extends Tradable> extends ArrayList<T> impleme
     public boolean add(T tradable) {
         boolean result = super.add(tradable);
         getObservableList().add(tradable);
-        storage.queueUpForSave();
+        storage.addRecord(tradable.getId(), tradable);
         return result;
     }
 
@@ -75,7 +89,10 @@ public final class TradableList<T extends Tradable> extends ArrayList<T> impleme
     public boolean remove(Object tradable) {
         boolean result = super.remove(tradable);
         getObservableList().remove(tradable);
-        storage.queueUpForSave();
+        // We keep the record if the list still holds a tradable with the same id
+        String id = ((Tradable) tradable).getId();
+        if (result && this.stream().noneMatch(e -> e.getId().equals(id)))
+            storage.removeRecord(id);
         return result;
     }
 
@@ -0,0 +1,133 @@
+/*
+ * This file is part of Bitsquare.
+ *
+ * Bitsquare is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bitsquare is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bitsquare. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.bitsquare.trade;
+
+import io.bitsquare.arbitration.Dispute;
+import io.bitsquare.trade.offer.OpenOffer;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+
+/**
+ * Index of the tradables by the ids of their transactions (offer fee, take offer fee, deposit, payout and dispute
+ * payout tx), so we find the tradable of a wallet tx without scanning all tradables and disputes.
+ * <p>
+ * The managers register their observable lists at construction. The tx ids of a trade get set during the trade
+ * protocol, followed by a state change, so we listen to the lists and the trade states and rebuild the index at the
+ * next lookup after a change. A dispute payout tx id gets set by the DisputeManager, which calls invalidate.
+ * <p>
+ * A trade moves from one list to another (e.g. from the open to the closed trades). We therefore don't add and remove
+ * the trade state listeners at the list changes but update them from all registered lists at rebuild.
+ */
+// Run in UserThread
+public class TradableTxIndex {
+    private final List<ObservableList<? extends Tradable>> tradableLists = new ArrayList<>();
+    private final List<ObservableList<Dispute>> disputeLists = new ArrayList<>();
+    private final Map<String, Tradable> tradableByTxId = new HashMap<>();
+    private final ChangeListener<Trade.State> tradeStateListener = (ov, oldValue, newValue) -> invalidate();
+    // The trades we have added the tradeStateListener to
+    private final Set<Trade> observedTrades = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean dirty = true;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // If a tx is used by several tradables (e.g. the offer fee tx by the offer and its trade) we keep the first one
+    // we find
+    @SuppressWarnings("unchecked")
+    public void addTradableList(ObservableList<? extends Tradable> tradableList) {
+        tradableLists.add(tradableList);
+        ((ObservableList<Tradable>) tradableList).addListener((ListChangeListener<Tradable>) change -> invalidate());
+        invalidate();
+    }
+
+    public void addDisputeList(ObservableList<Dispute> disputeList) {
+        disputeLists.add(disputeList);
+        disputeList.addListener((ListChangeListener<Dispute>) change -> invalidate());
+        invalidate();
+    }
+
+    public void invalidate() {
+        dirty = true;
+    }
+
+    public Optional<Tradable> getTradable(String txId) {
+        if (dirty)
+            rebuild();
+        return Optional.ofNullable(tradableByTxId.get(txId));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void rebuild() {
+        tradableByTxId.clear();
+        Map<String, Trade> tradeById = new HashMap<>();
+        Set<Trade> trades = Collections.newSetFromMap(new IdentityHashMap<>());
+        tradableLists.stream().forEach(tradableList -> tradableList.stream().forEach(tradable -> {
+            if (tradable instanceof OpenOffer) {
+                put(tradable.getOffer().getOfferFeePaymentTxID(), tradable);
+            } else if (tradable instanceof Trade) {
+                Trade trade = (Trade) tradable;
+                trades.add(trade);
+                tradeById.putIfAbsent(trade.getId(), trade);
+                put(trade.getTakeOfferFeeTxId(), trade);
+                if (trade.getOffer() != null)
+                    put(trade.getOffer().getOfferFeePaymentTxID(), trade);
+                if (trade.getDepositTx() != null)
+                    put(trade.getDepositTx().getHashAsString(), trade);
+                if (trade.getPayoutTx() != null)
+                    put(trade.getPayoutTx().getHashAsString(), trade);
+            }
+        }));
+
+        disputeLists.stream().forEach(disputeList -> disputeList.stream()
+                .filter(dispute -> dispute.getDisputePayoutTxId() != null)
+                .forEach(dispute -> {
+                    Trade trade = tradeById.get(dispute.getTradeId());
+                    if (trade != null)
+                        put(dispute.getDisputePayoutTxId(), trade);
+                }));
+
+        updateTradeStateListeners(trades);
+        dirty = false;
+    }
+
+    // Each trade in one of the lists gets exactly one listener, independent of how many lists it passed through
+    private void updateTradeStateListeners(Set<Trade> trades) {
+        observedTrades.stream()
+                .filter(trade -> !trades.contains(trade))
+                .forEach(trade -> trade.stateProperty().removeListener(tradeStateListener));
+        trades.stream()
+                .filter(trade -> !observedTrades.contains(trade))
+                .forEach(trade -> trade.stateProperty().addListener(tradeStateListener));
+        observedTrades.clear();
+        observedTrades.addAll(trades);
+    }
+
+    private void put(String txId, Tradable tradable) {
+        if (txId != null)
+            tradableByTxId.putIfAbsent(txId, tradable);
+    }
+}
@@ -342,7 +342,7 @@ public abstract class Trade implements Tradable, Model {
     @Override
     public void persist() {
         if (storage != null)
-            storage.queueUpForSave();
+            storage.queueUpForSave(getId(), this);
     }
 
     @Override
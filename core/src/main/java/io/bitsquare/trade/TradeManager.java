@@ -26,6 +26,7 @@ import io.bitsquare.btc.WalletService;
 import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.common.handlers.FaultHandler;
 import io.bitsquare.common.handlers.ResultHandler;
+import io.bitsquare.common.util.ObservableListIndex;
 import io.bitsquare.crypto.DecryptedMsgWithPubKey;
 import io.bitsquare.p2p.BootstrapListener;
 import io.bitsquare.p2p.Message;
@@ -78,6 +79,7 @@ public class TradeManager {
 
     private final Storage<TradableList<Trade>> tradableListStorage;
     private final TradableList<Trade> trades;
+    private final ObservableListIndex<String, Trade> tradeById;
     private final BooleanProperty pendingTradesInitialized = new SimpleBooleanProperty();
     private final BootstrapListener bootstrapListener;
 
@@ -96,6 +98,7 @@ public class TradeManager {
                         FailedTradesManager failedTradesManager,
                         ArbitratorManager arbitratorManager,
                         P2PService p2PService,
+                        TradableTxIndex tradableTxIndex,
                         @Named("storage.dir") File storageDir) {
         this.user = user;
         this.keyRing = keyRing;
@@ -109,6 +112,8 @@ public class TradeManager {
 
         tradableListStorage = new Storage<>(storageDir);
         this.trades = new TradableList<>(tradableListStorage, "PendingTrades");
+        tradeById = new ObservableListIndex<>(trades.getObservableList(), Trade::getId);
+        tradableTxIndex.addTradableList(trades.getObservableList());
 
         p2PService.addDecryptedDirectMessageListener(new DecryptedDirectMessageListener() {
             @Override
@@ -138,7 +143,7 @@ public class TradeManager {
                 } else if (message instanceof TradeMessage) {
                     log.trace("Received TradeMessage: " + message);
                     String tradeId = ((TradeMessage) message).tradeId;
-                    Optional<Trade> tradeOptional = trades.stream().filter(e -> e.getId().equals(tradeId)).findAny();
+                    Optional<Trade> tradeOptional = getTradeById(tradeId);
                     // The mailbox message will be removed inside the tasks after they are processed successfully
                     if (tradeOptional.isPresent())
                         tradeOptional.get().setMailboxMessage(decryptedMsgWithPubKey);
@@ -390,6 +395,6 @@ public class TradeManager {
     }
 
     public Optional<Trade> getTradeById(String tradeId) {
-        return trades.stream().filter(e -> e.getId().equals(tradeId)).findFirst();
+        return tradeById.get(tradeId);
     }
 }
\ No newline at end of file
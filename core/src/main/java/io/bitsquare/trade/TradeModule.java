@@ -37,5 +37,6 @@ public class TradeModule extends AppModule {
         bind(TradeManager.class).in(Singleton.class);
         bind(ClosedTradableManager.class).in(Singleton.class);
         bind(FailedTradesManager.class).in(Singleton.class);
+        bind(TradableTxIndex.class).in(Singleton.class);
     }
 }
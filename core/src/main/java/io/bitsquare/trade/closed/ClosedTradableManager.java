@@ -22,6 +22,7 @@ import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.storage.Storage;
 import io.bitsquare.trade.Tradable;
 import io.bitsquare.trade.TradableList;
+import io.bitsquare.trade.TradableTxIndex;
 import io.bitsquare.trade.offer.Offer;
 import javafx.collections.ObservableList;
 import org.slf4j.Logger;
@@ -37,9 +38,10 @@ public class ClosedTradableManager {
     private final KeyRing keyRing;
 
     @Inject
-    public ClosedTradableManager(KeyRing keyRing, @Named("storage.dir") File storageDir) {
+    public ClosedTradableManager(KeyRing keyRing, TradableTxIndex tradableTxIndex, @Named("storage.dir") File storageDir) {
         this.keyRing = keyRing;
         this.closedTrades = new TradableList<>(new Storage<>(storageDir), "ClosedTrades");
+        tradableTxIndex.addTradableList(closedTrades.getObservableList());
     }
 
     public void add(Tradable tradable) {
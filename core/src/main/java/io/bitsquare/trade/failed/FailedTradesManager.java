@@ -21,6 +21,7 @@ import com.google.inject.Inject;
 import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.storage.Storage;
 import io.bitsquare.trade.TradableList;
+import io.bitsquare.trade.TradableTxIndex;
 import io.bitsquare.trade.Trade;
 import io.bitsquare.trade.offer.Offer;
 import javafx.collections.ObservableList;
@@ -37,9 +38,10 @@ public class FailedTradesManager {
     private final KeyRing keyRing;
 
     @Inject
-    public FailedTradesManager(KeyRing keyRing, @Named("storage.dir") File storageDir) {
+    public FailedTradesManager(KeyRing keyRing, TradableTxIndex tradableTxIndex, @Named("storage.dir") File storageDir) {
         this.keyRing = keyRing;
         this.failedTrades = new TradableList<>(new Storage<>(storageDir), "FailedTrades");
+        tradableTxIndex.addTradableList(failedTrades.getObservableList());
     }
 
     public void add(Trade trade) {
@@ -104,6 +104,16 @@ public class OfferBookService {
         }
     }
 
+    public void refreshOffers(List<Offer> offers, ResultHandler resultHandler, ErrorMessageHandler errorMessageHandler) {
+        boolean result = p2PService.refreshTTL(offers, true);
+        if (result) {
+            log.trace("Refresh of " + offers.size() + " offers was successful.");
+            resultHandler.handleResult();
+        } else {
+            errorMessageHandler.handleErrorMessage("Refresh offers failed");
+        }
+    }
+
     public void removeOffer(Offer offer, @Nullable ResultHandler resultHandler, @Nullable ErrorMessageHandler errorMessageHandler) {
         if (p2PService.removeData(offer, true)) {
             log.trace("Remove offer from network was successful. Offer ID = " + offer.getId());
@@ -93,7 +93,7 @@ public final class OpenOffer implements Tradable {
     public void setState(State state) {
         log.trace("setState" + state);
         this.state = state;
-        storage.queueUpForSave();
+        storage.queueUpForSave(getId(), this);
 
         // We keep it reserved for a limited time, if trade preparation fails we revert to available state
         if (this.state == State.RESERVED)
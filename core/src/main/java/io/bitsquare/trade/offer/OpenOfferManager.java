@@ -26,6 +26,7 @@ import io.bitsquare.common.UserThread;
 import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.common.handlers.ErrorMessageHandler;
 import io.bitsquare.common.handlers.ResultHandler;
+import io.bitsquare.common.util.ObservableListIndex;
 import io.bitsquare.crypto.DecryptedMsgWithPubKey;
 import io.bitsquare.p2p.BootstrapListener;
 import io.bitsquare.p2p.Message;
@@ -36,6 +37,7 @@ import io.bitsquare.p2p.messaging.SendDirectMessageListener;
 import io.bitsquare.p2p.peers.PeerManager;
 import io.bitsquare.storage.Storage;
 import io.bitsquare.trade.TradableList;
+import io.bitsquare.trade.TradableTxIndex;
 import io.bitsquare.trade.closed.ClosedTradableManager;
 import io.bitsquare.trade.handlers.TransactionResultHandler;
 import io.bitsquare.trade.protocol.availability.messages.OfferAvailabilityRequest;
@@ -51,8 +53,10 @@ import javax.annotation.Nullable;
 import javax.inject.Named;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.inject.internal.util.$Preconditions.checkNotNull;
 import static io.bitsquare.util.Validator.nonEmptyStringOf;
@@ -75,6 +79,7 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
     private final ClosedTradableManager closedTradableManager;
 
     private final TradableList<OpenOffer> openOffers;
+    private final ObservableListIndex<String, OpenOffer> openOfferById;
     private final Storage<TradableList<OpenOffer>> openOffersStorage;
     private boolean stopped;
     private Timer periodicRepublishOffersTimer, periodicRefreshOffersTimer, retryRepublishOffersTimer;
@@ -93,6 +98,7 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
                             TradeWalletService tradeWalletService,
                             OfferBookService offerBookService,
                             ClosedTradableManager closedTradableManager,
+                            TradableTxIndex tradableTxIndex,
                             @Named("storage.dir") File storageDir) {
         this.keyRing = keyRing;
         this.user = user;
@@ -104,6 +110,8 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
 
         openOffersStorage = new Storage<>(storageDir);
         this.openOffers = new TradableList<>(openOffersStorage, "OpenOffers");
+        openOfferById = new ObservableListIndex<>(openOffers.getObservableList(), OpenOffer::getId);
+        tradableTxIndex.addTradableList(openOffers.getObservableList());
 
         // In case the app did get killed the shutDown from the modules is not called, so we use a shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(OpenOfferManager.this::shutDown,
@@ -235,7 +243,6 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
                 transaction -> {
                     OpenOffer openOffer = new OpenOffer(offer, openOffersStorage);
                     openOffers.add(openOffer);
-                    openOffersStorage.queueUpForSave();
                     resultHandler.handleResult(transaction);
                     if (!stopped) {
                         startPeriodicRepublishOffersTimer();
@@ -306,11 +313,11 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
     }
 
     public Optional<OpenOffer> findOpenOffer(String offerId) {
-        return openOffers.stream().filter(openOffer -> openOffer.getId().equals(offerId)).findAny();
+        return openOfferById.get(offerId);
     }
 
     public Optional<OpenOffer> getOpenOfferById(String offerId) {
-        return openOffers.stream().filter(e -> e.getId().equals(offerId)).findFirst();
+        return openOfferById.get(offerId);
     }
 
 
@@ -435,20 +442,29 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
                             int size = openOffers.size();
                             Log.traceCall("Number of offer for refresh: " + size);
 
-                            //we clone our list as openOffers might change during our delayed call
-                            final ArrayList<OpenOffer> openOffersList = new ArrayList<>(openOffers);
-                            for (int i = 0; i < size; i++) {
-                                // we delay to avoid reaching throttle limits
-                                // roughly 1 offer per second
-                                final int n = i;
-                                final long minDelay = i * 500 + 1;
-                                final long maxDelay = minDelay * 2 + 500;
-                                UserThread.runAfterRandomDelay(() -> {
-                                    OpenOffer openOffer = openOffersList.get(n);
-                                    // we need to check if in the meantime the offer has been removed
-                                    if (openOffers.contains(openOffer))
-                                        refreshOffer(openOffer);
-                                }, minDelay, maxDelay, TimeUnit.MILLISECONDS);
+                            if (P2PService.isRefreshTTLBundleEnabled()) {
+                                // We refresh all our offers in one message with one signature and sequence number
+                                List<Offer> offers = openOffers.stream()
+                                        .map(OpenOffer::getOffer)
+                                        .collect(Collectors.toList());
+                                if (!offers.isEmpty())
+                                    refreshOffers(offers);
+                            } else {
+                                //we clone our list as openOffers might change during our delayed call
+                                final ArrayList<OpenOffer> openOffersList = new ArrayList<>(openOffers);
+                                for (int i = 0; i < size; i++) {
+                                    // we delay to avoid reaching throttle limits
+                                    // roughly 1 offer per second
+                                    final int n = i;
+                                    final long minDelay = i * 500 + 1;
+                                    final long maxDelay = minDelay * 2 + 500;
+                                    UserThread.runAfterRandomDelay(() -> {
+                                        OpenOffer openOffer = openOffersList.get(n);
+                                        // we need to check if in the meantime the offer has been removed
+                                        if (openOffers.contains(openOffer))
+                                            refreshOffer(openOffer);
+                                    }, minDelay, maxDelay, TimeUnit.MILLISECONDS);
+                                }
                             }
                         } else {
                             log.warn("We have stopped already. We ignore that periodicRefreshOffersTimer.run call.");
@@ -466,6 +482,12 @@ public class OpenOfferManager implements PeerManager.Listener, DecryptedDirectMe
                 errorMessage -> log.error("Refresh TTL for offer failed. " + errorMessage));
     }
 
+    private void refreshOffers(List<Offer> offers) {
+        offerBookService.refreshOffers(offers,
+                () -> log.debug("Successful refreshed TTL for {} offers", offers.size()),
+                errorMessage -> log.error("Refresh TTL for offers failed. " + errorMessage));
+    }
+
     private void restart() {
         log.info("Restart after connection loss");
         if (retryRepublishOffersTimer == null)
@@ -472,34 +472,7 @@ public class MainViewModel implements ViewModel {
 
     private void applyTradePeriodState() {
         updateTradePeriodState();
-        tradeWalletService.addBlockChainListener(new BlockChainListener() {
-            @Override
-            public void notifyNewBestBlock(StoredBlock block) throws VerificationException {
-                updateTradePeriodState();
-            }
-
-            @Override
-            public void reorganize(StoredBlock splitPoint, List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks)
-                    throws VerificationException {
-            }
-
-            @Override
-            public boolean isTransactionRelevant(Transaction tx) throws ScriptException {
-                return false;
-            }
-
-            @Override
-            public void receiveFromBlock(Transaction tx, StoredBlock block, AbstractBlockChain.NewBlockType blockType, int relativityOffset)
-                    throws VerificationException {
-
-            }
-
-            @Override
-            public boolean notifyTransactionIsInBlock(Sha256Hash txHash, StoredBlock block, AbstractBlockChain.NewBlockType blockType,
-                                                      int relativityOffset) throws VerificationException {
-                return false;
-            }
-        });
+        walletService.addBestBlockListener(block -> updateTradePeriodState());
     }
 
     private void updateTradePeriodState() {
@@ -18,7 +18,6 @@
 package io.bitsquare.gui.main.funds.transactions;
 
 import de.jensd.fx.fontawesome.AwesomeIcon;
-import io.bitsquare.arbitration.DisputeManager;
 import io.bitsquare.btc.WalletService;
 import io.bitsquare.common.util.Utilities;
 import io.bitsquare.gui.common.view.ActivatableView;
@@ -29,13 +28,9 @@ import io.bitsquare.gui.main.overlays.popups.Popup;
 import io.bitsquare.gui.main.overlays.windows.OfferDetailsWindow;
 import io.bitsquare.gui.main.overlays.windows.TradeDetailsWindow;
 import io.bitsquare.gui.util.BSFormatter;
-import io.bitsquare.trade.Tradable;
+import io.bitsquare.trade.TradableTxIndex;
 import io.bitsquare.trade.Trade;
-import io.bitsquare.trade.TradeManager;
-import io.bitsquare.trade.closed.ClosedTradableManager;
-import io.bitsquare.trade.failed.FailedTradesManager;
 import io.bitsquare.trade.offer.OpenOffer;
-import io.bitsquare.trade.offer.OpenOfferManager;
 import io.bitsquare.user.Preferences;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
@@ -49,10 +44,7 @@ import org.bitcoinj.script.Script;
 
 import javax.inject.Inject;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @FxmlView
 public class TransactionsView extends ActivatableView<VBox, Void> {
@@ -66,14 +58,10 @@ public class TransactionsView extends ActivatableView<VBox, Void> {
     private final ObservableList<TransactionsListItem> transactionsListItems = FXCollections.observableArrayList();
 
     private final WalletService walletService;
-    private final TradeManager tradeManager;
-    private final OpenOfferManager openOfferManager;
-    private final ClosedTradableManager closedTradableManager;
-    private final FailedTradesManager failedTradesManager;
+    private final TradableTxIndex tradableTxIndex;
     private final BSFormatter formatter;
     private final Preferences preferences;
     private final TradeDetailsWindow tradeDetailsWindow;
-    private final DisputeManager disputeManager;
     private final OfferDetailsWindow offerDetailsWindow;
     private WalletEventListener walletEventListener;
 
@@ -83,20 +71,14 @@ public class TransactionsView extends ActivatableView<VBox, Void> {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     @Inject
-    private TransactionsView(WalletService walletService, TradeManager tradeManager, OpenOfferManager openOfferManager,
-                             ClosedTradableManager closedTradableManager, FailedTradesManager failedTradesManager,
+    private TransactionsView(WalletService walletService, TradableTxIndex tradableTxIndex,
                              BSFormatter formatter, Preferences preferences, TradeDetailsWindow tradeDetailsWindow,
-                             DisputeManager disputeManager,
                              OfferDetailsWindow offerDetailsWindow) {
         this.walletService = walletService;
-        this.tradeManager = tradeManager;
-        this.openOfferManager = openOfferManager;
-        this.closedTradableManager = closedTradableManager;
-        this.failedTradesManager = failedTradesManager;
+        this.tradableTxIndex = tradableTxIndex;
         this.formatter = formatter;
         this.preferences = preferences;
         this.tradeDetailsWindow = tradeDetailsWindow;
-        this.disputeManager = disputeManager;
         this.offerDetailsWindow = offerDetailsWindow;
     }
 
@@ -165,41 +147,9 @@ public class TransactionsView extends ActivatableView<VBox, Void> {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private void updateList() {
-        Stream<Tradable> concat1 = Stream.concat(openOfferManager.getOpenOffers().stream(), tradeManager.getTrades().stream());
-        Stream<Tradable> concat2 = Stream.concat(concat1, closedTradableManager.getClosedTrades().stream());
-        Stream<Tradable> concat3 = Stream.concat(concat2, failedTradesManager.getFailedTrades().stream());
-        Set<Tradable> all = concat3.collect(Collectors.toSet());
-
         List<TransactionsListItem> listItems = walletService.getWallet().getRecentTransactions(1000, true).stream()
-                .map(transaction -> {
-                    Optional<Tradable> tradableOptional = all.stream()
-                            .filter(tradable -> {
-                                String txId = transaction.getHashAsString();
-                                if (tradable instanceof OpenOffer)
-                                    return tradable.getOffer().getOfferFeePaymentTxID().equals(txId);
-                                else if (tradable instanceof Trade) {
-                                    Trade trade = (Trade) tradable;
-                                    boolean isTakeOfferFeeTx = txId.equals(trade.getTakeOfferFeeTxId());
-                                    boolean isOfferFeeTx = trade.getOffer() != null &&
-                                            txId.equals(trade.getOffer().getOfferFeePaymentTxID());
-                                    boolean isDepositTx = trade.getDepositTx() != null &&
-                                            trade.getDepositTx().getHashAsString().equals(txId);
-                                    boolean isPayoutTx = trade.getPayoutTx() != null &&
-                                            trade.getPayoutTx().getHashAsString().equals(txId);
-
-                                    boolean isDisputedPayoutTx = disputeManager.getDisputesAsObservableList().stream()
-                                            .filter(dispute -> txId.equals(dispute.getDisputePayoutTxId()) &&
-                                                    tradable.getId().equals(dispute.getTradeId()))
-                                            .findAny()
-                                            .isPresent();
-
-                                    return isTakeOfferFeeTx || isOfferFeeTx || isDepositTx || isPayoutTx || isDisputedPayoutTx;
-                                } else
-                                    return false;
-                            })
-                            .findAny();
-                    return new TransactionsListItem(transaction, walletService, tradableOptional, formatter);
-                })
+                .map(transaction -> new TransactionsListItem(transaction, walletService,
+                        tradableTxIndex.getTradable(transaction.getHashAsString()), formatter))
                 .collect(Collectors.toList());
 
         // are sorted by getRecentTransactions
@@ -24,6 +24,7 @@ import io.bitsquare.arbitration.DisputeManager;
 import io.bitsquare.btc.FeePolicy;
 import io.bitsquare.btc.TradeWalletService;
 import io.bitsquare.btc.WalletService;
+import io.bitsquare.btc.listeners.BestBlockListener;
 import io.bitsquare.common.crypto.KeyRing;
 import io.bitsquare.common.handlers.ErrorMessageHandler;
 import io.bitsquare.common.handlers.FaultHandler;
@@ -50,7 +51,6 @@ import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import org.bitcoinj.core.BlockChainListener;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Transaction;
 import org.spongycastle.crypto.params.KeyParameter;
@@ -208,12 +208,12 @@ public class PendingTradesDataModel extends ActivatableDataModel {
         return isOfferer ? offer.getDirection() : offer.getMirroredDirection();
     }
 
-    void addBlockChainListener(BlockChainListener blockChainListener) {
-        tradeWalletService.addBlockChainListener(blockChainListener);
+    void addBestBlockListener(BestBlockListener bestBlockListener) {
+        walletService.addBestBlockListener(bestBlockListener);
     }
 
-    void removeBlockChainListener(BlockChainListener blockChainListener) {
-        tradeWalletService.removeBlockChainListener(blockChainListener);
+    void removeBestBlockListener(BestBlockListener bestBlockListener) {
+        walletService.removeBestBlockListener(bestBlockListener);
     }
 
     public long getLockTime() {
@@ -20,6 +20,7 @@ package io.bitsquare.gui.main.portfolio.pendingtrades;
 import com.google.inject.Inject;
 import io.bitsquare.app.Log;
 import io.bitsquare.btc.FeePolicy;
+import io.bitsquare.btc.listeners.BestBlockListener;
 import io.bitsquare.common.Clock;
 import io.bitsquare.gui.common.model.ActivatableWithDataModel;
 import io.bitsquare.gui.common.model.ViewModel;
@@ -34,7 +35,6 @@ import io.bitsquare.trade.offer.Offer;
 import io.bitsquare.user.User;
 import javafx.beans.property.*;
 import javafx.beans.value.ChangeListener;
-import org.bitcoinj.core.BlockChainListener;
 import org.fxmisc.easybind.EasyBind;
 import org.fxmisc.easybind.Subscription;
 
@@ -196,12 +196,12 @@ public class PendingTradesViewModel extends ActivatableWithDataModel<PendingTrad
         return result;
     }
 
-    public void addBlockChainListener(BlockChainListener blockChainListener) {
-        dataModel.addBlockChainListener(blockChainListener);
+    public void addBestBlockListener(BestBlockListener bestBlockListener) {
+        dataModel.addBestBlockListener(bestBlockListener);
     }
 
-    public void removeBlockChainListener(BlockChainListener blockChainListener) {
-        dataModel.removeBlockChainListener(blockChainListener);
+    public void removeBestBlockListener(BestBlockListener bestBlockListener) {
+        dataModel.removeBestBlockListener(bestBlockListener);
     }
 
     public long getLockTime() {
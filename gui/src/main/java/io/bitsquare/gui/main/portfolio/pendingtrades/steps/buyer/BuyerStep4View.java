@@ -17,13 +17,11 @@
 
 package io.bitsquare.gui.main.portfolio.pendingtrades.steps.buyer;
 
+import io.bitsquare.btc.listeners.BestBlockListener;
 import io.bitsquare.gui.main.portfolio.pendingtrades.PendingTradesViewModel;
 import io.bitsquare.gui.main.portfolio.pendingtrades.steps.TradeStepView;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
-import org.bitcoinj.core.*;
-
-import java.util.List;
 
 import static io.bitsquare.gui.util.FormBuilder.addLabelTextField;
 
@@ -31,7 +29,7 @@ public class BuyerStep4View extends TradeStepView {
 
     private TextField blockTextField;
     private TextField timeTextField;
-    private final BlockChainListener blockChainListener;
+    private final BestBlockListener bestBlockListener;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -41,40 +39,14 @@ public class BuyerStep4View extends TradeStepView {
     public BuyerStep4View(PendingTradesViewModel model) {
         super(model);
 
-        blockChainListener = new BlockChainListener() {
-            @Override
-            public void notifyNewBestBlock(StoredBlock block) throws VerificationException {
-                updateDateFromBlockHeight(block.getHeight());
-            }
-
-            @Override
-            public void reorganize(StoredBlock splitPoint, List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks) throws VerificationException {
-                updateDateFromBlockHeight(model.getBestChainHeight());
-            }
-
-            @Override
-            public boolean isTransactionRelevant(Transaction tx) throws ScriptException {
-                return false;
-            }
-
-            @Override
-            public void receiveFromBlock(Transaction tx, StoredBlock block, AbstractBlockChain.NewBlockType blockType, int relativityOffset) throws
-                    VerificationException {
-            }
-
-            @Override
-            public boolean notifyTransactionIsInBlock(Sha256Hash txHash, StoredBlock block, AbstractBlockChain.NewBlockType blockType, int relativityOffset)
-                    throws VerificationException {
-                return false;
-            }
-        };
+        bestBlockListener = block -> updateDateFromBlockHeight(block.getHeight());
     }
 
     @Override
     public void activate() {
         super.activate();
 
-        model.addBlockChainListener(blockChainListener);
+        model.addBestBlockListener(bestBlockListener);
         updateDateFromBlockHeight(model.getBestChainHeight());
     }
 
@@ -82,7 +54,7 @@ public class BuyerStep4View extends TradeStepView {
     public void deactivate() {
         super.deactivate();
 
-        model.removeBlockChainListener(blockChainListener);
+        model.removeBestBlockListener(bestBlockListener);
     }
 
 
@@ -28,7 +28,7 @@ import io.bitsquare.gui.common.view.FxmlView;
 import io.bitsquare.gui.main.overlays.popups.Popup;
 import io.bitsquare.gui.util.BSFormatter;
 import io.bitsquare.p2p.P2PService;
-import io.bitsquare.p2p.network.Statistic;
+import io.bitsquare.p2p.network.NetworkMetrics;
 import io.bitsquare.user.Preferences;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -75,6 +75,7 @@ public class NetworkSettingsView extends ActivatableViewAndModel<GridPane, Activ
     private Subscription numP2PPeersSubscription;
     private Subscription bitcoinPeersSubscription;
     private Subscription nodeAddressSubscription;
+    private Clock.Listener clockListener;
     private ObservableList<P2pNetworkListItem> networkListItems = FXCollections.observableArrayList();
 
     @Inject
@@ -149,8 +150,23 @@ public class NetworkSettingsView extends ActivatableViewAndModel<GridPane, Activ
         nodeAddressSubscription = EasyBind.subscribe(p2PService.getNetworkNode().nodeAddressProperty(),
                 nodeAddress -> onionAddress.setText(nodeAddress == null ? "Not known yet..." : p2PService.getAddress().getFullAddress()));
         numP2PPeersSubscription = EasyBind.subscribe(p2PService.getNumConnectedPeers(), numPeers -> updateP2PTable());
-        totalTraffic.textProperty().bind(EasyBind.combine(Statistic.totalSentBytesProperty(), Statistic.totalReceivedBytesProperty(),
-                (sent, received) -> "Sent: " + formatter.formatBytes((int) sent) + ", received: " + formatter.formatBytes((int) received)));
+        // The metrics are updated from the connection threads, so we poll them
+        clockListener = new Clock.Listener() {
+            @Override
+            public void onSecondTick() {
+                updateTotalTraffic();
+            }
+
+            @Override
+            public void onMinuteTick() {
+            }
+
+            @Override
+            public void onMissedSecondTick(long missed) {
+            }
+        };
+        clock.addListener(clockListener);
+        updateTotalTraffic();
 
         p2PPeerTable.setItems(networkListItems);
         p2PPeerTable.sort();
@@ -169,8 +185,16 @@ public class NetworkSettingsView extends ActivatableViewAndModel<GridPane, Activ
         if (numP2PPeersSubscription != null)
             numP2PPeersSubscription.unsubscribe();
 
+        if (clockListener != null)
+            clock.removeListener(clockListener);
+
         p2PPeerTable.getItems().forEach(P2pNetworkListItem::cleanup);
-        totalTraffic.textProperty().unbind();
+    }
+
+    private void updateTotalTraffic() {
+        NetworkMetrics.Snapshot snapshot = NetworkMetrics.getSnapshot();
+        totalTraffic.setText("Sent: " + formatter.formatBytes(snapshot.sentBytes) +
+                ", received: " + formatter.formatBytes(snapshot.receivedBytes));
     }
 
     private void updateP2PTable() {
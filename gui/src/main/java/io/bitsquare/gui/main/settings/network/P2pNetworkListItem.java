@@ -35,7 +35,7 @@ public class P2pNetworkListItem {
 
     private final Statistic statistic;
     private final Connection connection;
-    private final Subscription sentBytesSubscription, receivedBytesSubscription, onionAddressSubscription, roundTripTimeSubscription;
+    private final Subscription onionAddressSubscription;
     private final Clock clock;
     private final BSFormatter formatter;
 
@@ -54,19 +54,13 @@ public class P2pNetworkListItem {
         this.formatter = formatter;
         this.statistic = connection.getStatistic();
 
-        sentBytesSubscription = EasyBind.subscribe(statistic.sentBytesProperty(),
-                e -> sentBytes.set(formatter.formatBytes((int) e)));
-        receivedBytesSubscription = EasyBind.subscribe(statistic.receivedBytesProperty(),
-                e -> receivedBytes.set(formatter.formatBytes((int) e)));
         onionAddressSubscription = EasyBind.subscribe(connection.peersNodeAddressProperty(),
                 nodeAddress -> onionAddress.set(nodeAddress != null ? nodeAddress.getFullAddress() : "Not known yet"));
-        roundTripTimeSubscription = EasyBind.subscribe(statistic.roundTripTimeProperty(),
-                roundTripTime -> this.roundTripTime.set((int) roundTripTime == 0 ? "-" : roundTripTime + " ms"));
 
         listener = new Clock.Listener() {
             @Override
             public void onSecondTick() {
-                onLastActivityChanged(statistic.getLastActivityTimestamp());
+                updateStatistic();
                 updatePeerType();
                 updateConnectionType();
             }
@@ -80,20 +74,22 @@ public class P2pNetworkListItem {
             }
         };
         clock.addListener(listener);
-        onLastActivityChanged(statistic.getLastActivityTimestamp());
+        updateStatistic();
         updatePeerType();
         updateConnectionType();
     }
 
-    private void onLastActivityChanged(long timeStamp) {
-        lastActivity.set(DurationFormatUtils.formatDuration(System.currentTimeMillis() - timeStamp, "mm:ss.SSS"));
+    // The statistic is updated from the connection threads, so we poll it
+    private void updateStatistic() {
+        lastActivity.set(DurationFormatUtils.formatDuration(statistic.getLastActivityAge(), "mm:ss.SSS"));
+        sentBytes.set(formatter.formatBytes(statistic.getSentBytes()));
+        receivedBytes.set(formatter.formatBytes(statistic.getReceivedBytes()));
+        int roundTripTime = statistic.getRoundTripTime();
+        this.roundTripTime.set(roundTripTime == 0 ? "-" : roundTripTime + " ms");
     }
 
     public void cleanup() {
-        sentBytesSubscription.unsubscribe();
-        receivedBytesSubscription.unsubscribe();
         onionAddressSubscription.unsubscribe();
-        roundTripTimeSubscription.unsubscribe();
         clock.removeListener(listener);
     }
 
@@ -426,16 +426,19 @@ public class BSFormatter {
             return isOfferer ? "Seller (offerer)" : "Buyer (taker)";
     }
 
-    public String formatBytes(int bytes) {
+    public String formatBytes(long bytes) {
         double kb = 1024;
         double mb = kb * kb;
+        double gb = mb * kb;
         DecimalFormat decimalFormat = new DecimalFormat("#.##");
         if (bytes < kb)
             return bytes + " bytes";
         else if (bytes < mb)
             return decimalFormat.format(bytes / kb) + " KB";
-        else
+        else if (bytes < gb)
             return decimalFormat.format(bytes / mb) + " MB";
+        else
+            return decimalFormat.format(bytes / gb) + " GB";
     }
 
 }
@@ -0,0 +1,185 @@
+package io.bitsquare.p2p;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.bitsquare.common.UserThread;
+import io.bitsquare.common.crypto.CryptoException;
+import io.bitsquare.crypto.DecryptedMsgWithPubKey;
+import io.bitsquare.crypto.EncryptionService;
+import io.bitsquare.p2p.messaging.MailboxMessage;
+import io.bitsquare.p2p.messaging.PrefixedSealedAndSignedMessage;
+import io.bitsquare.p2p.network.NetworkNode;
+import io.bitsquare.p2p.storage.P2PDataStorage;
+import io.bitsquare.p2p.storage.storageentry.ProtectedMailboxStorageEntry;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts the mailbox entries which might be intended for us. At startup we get all mailbox entries of the network,
+ * so we filter them first by the address prefix hash and decrypt the remaining ones on a worker pool instead of one
+ * after the other on the UserThread.
+ * <p>
+ * The decrypted messages are delivered on the UserThread in the order the entries were added. We remember the
+ * hashes of the entries we have processed, so an entry we failed to decrypt is not tried again.
+ */
+// Run in UserThread
+class MailboxDecrypter {
+    private static final Logger log = LoggerFactory.getLogger(MailboxDecrypter.class);
+
+    interface Listener {
+        void onMailboxMessageDecrypted(ProtectedMailboxStorageEntry protectedMailboxStorageEntry,
+                                       DecryptedMsgWithPubKey decryptedMsgWithPubKey);
+    }
+
+    private final NetworkNode networkNode;
+    private final EncryptionService encryptionService;
+    private final Listener listener;
+    // We leave one core for the UserThread
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            new ThreadFactoryBuilder().setNameFormat("MailboxDecrypter-%d").setDaemon(true).build());
+    // Entries in the order they were added
+    private final Queue<DecryptionTask> decryptionTasks = new ConcurrentLinkedQueue<>();
+    // Hashes of entries which are in the queue or got decrypted
+    private final Set<P2PDataStorage.ByteArray> acceptedHashes = new HashSet<>();
+    // Hashes of entries which are not intended for us
+    private final Set<P2PDataStorage.ByteArray> failedHashes = new HashSet<>();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    MailboxDecrypter(NetworkNode networkNode, EncryptionService encryptionService, Listener listener) {
+        this.networkNode = networkNode;
+        this.encryptionService = encryptionService;
+        this.listener = listener;
+    }
+
+    void shutDown() {
+        MoreExecutors.shutdownAndAwaitTermination(executor, 500, TimeUnit.MILLISECONDS);
+    }
+
+    // Also used by the P2PService for the direct messages
+    static boolean verifyAddressPrefixHash(@Nullable NodeAddress myNodeAddress,
+                                           PrefixedSealedAndSignedMessage prefixedSealedAndSignedMessage) {
+        if (myNodeAddress != null) {
+            byte[] blurredAddressHash = myNodeAddress.getAddressPrefixHash();
+            return blurredAddressHash != null &&
+                    Arrays.equals(blurredAddressHash, prefixedSealedAndSignedMessage.addressPrefixHash);
+        } else {
+            log.debug("myOnionAddress is null at verifyAddressPrefixHash. That is expected at startup.");
+            return false;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void add(ProtectedMailboxStorageEntry protectedMailboxStorageEntry) {
+        // Before our hidden service is published we don't know our address. The entries in the storage get added
+        // again when it is published.
+        PrefixedSealedAndSignedMessage prefixedSealedAndSignedMessage =
+                protectedMailboxStorageEntry.getMailboxStoragePayload().prefixedSealedAndSignedMessage;
+        if (!verifyAddressPrefixHash(networkNode.getNodeAddress(), prefixedSealedAndSignedMessage)) {
+            log.trace("Wrong blurredAddressHash. The message is not intended for us.");
+            return;
+        }
+
+        P2PDataStorage.ByteArray hashOfPayload = new P2PDataStorage.ByteArray(protectedMailboxStorageEntry.getHashOfPayload());
+        if (failedHashes.contains(hashOfPayload) || !acceptedHashes.add(hashOfPayload)) {
+            log.trace("We have processed that mailbox entry already.");
+            return;
+        }
+
+        DecryptionTask decryptionTask = new DecryptionTask(protectedMailboxStorageEntry, hashOfPayload);
+        decryptionTasks.add(decryptionTask);
+        try {
+            executor.execute(() -> {
+                decrypt(decryptionTask);
+                UserThread.execute(this::deliverDecryptedTasks);
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("executor got shut down. We ignore the mailbox entry.");
+            decryptionTasks.remove(decryptionTask);
+            acceptedHashes.remove(hashOfPayload);
+        }
+    }
+
+    // The entry got removed from the storage, so we don't need to remember it anymore
+    void onRemoved(ProtectedMailboxStorageEntry protectedMailboxStorageEntry) {
+        P2PDataStorage.ByteArray hashOfPayload = new P2PDataStorage.ByteArray(protectedMailboxStorageEntry.getHashOfPayload());
+        acceptedHashes.remove(hashOfPayload);
+        failedHashes.remove(hashOfPayload);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Called from the executor
+    private void decrypt(DecryptionTask decryptionTask) {
+        try {
+            DecryptedMsgWithPubKey decryptedMsgWithPubKey = encryptionService.decryptAndVerify(decryptionTask
+                    .protectedMailboxStorageEntry.getMailboxStoragePayload().prefixedSealedAndSignedMessage.sealedAndSigned);
+            if (decryptedMsgWithPubKey.message instanceof MailboxMessage)
+                decryptionTask.decryptedMsgWithPubKey = decryptedMsgWithPubKey;
+            else
+                log.warn("tryDecryptMailboxData: Expected MailboxMessage but got other type. " +
+                        "decryptedMsgWithPubKey.message=", decryptedMsgWithPubKey.message);
+        } catch (CryptoException e) {
+            log.trace("Decryption of SealedAndSignedMessage failed. " +
+                    "That is expected if the message is not intended for us. " + e.getMessage());
+        } catch (Throwable t) {
+            log.error("Decryption of mailbox entry failed. " + t.getMessage());
+        } finally {
+            decryptionTask.isDone = true;
+        }
+    }
+
+    private void deliverDecryptedTasks() {
+        DecryptionTask decryptionTask;
+        while ((decryptionTask = decryptionTasks.peek()) != null && decryptionTask.isDone) {
+            decryptionTasks.poll();
+            if (decryptionTask.decryptedMsgWithPubKey != null) {
+                listener.onMailboxMessageDecrypted(decryptionTask.protectedMailboxStorageEntry,
+                        decryptionTask.decryptedMsgWithPubKey);
+            } else {
+                acceptedHashes.remove(decryptionTask.hashOfPayload);
+                failedHashes.add(decryptionTask.hashOfPayload);
+            }
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // DecryptionTask
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class DecryptionTask {
+        final ProtectedMailboxStorageEntry protectedMailboxStorageEntry;
+        final P2PDataStorage.ByteArray hashOfPayload;
+        // Set on the executor, read on the UserThread after isDone
+        DecryptedMsgWithPubKey decryptedMsgWithPubKey;
+        volatile boolean isDone;
+
+        DecryptionTask(ProtectedMailboxStorageEntry protectedMailboxStorageEntry, P2PDataStorage.ByteArray hashOfPayload) {
+            this.protectedMailboxStorageEntry = protectedMailboxStorageEntry;
+            this.hashOfPayload = hashOfPayload;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import io.bitsquare.p2p.storage.HashMapChangedListener;
 import io.bitsquare.p2p.storage.P2PDataStorage;
 import io.bitsquare.p2p.storage.messages.AddDataMessage;
 import io.bitsquare.p2p.storage.messages.BroadcastMessage;
+import io.bitsquare.p2p.storage.messages.RefreshTTLBundleMessage;
 import io.bitsquare.p2p.storage.messages.RefreshTTLMessage;
 import io.bitsquare.p2p.storage.payload.MailboxStoragePayload;
 import io.bitsquare.p2p.storage.payload.StoragePayload;
@@ -54,6 +55,26 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         HashMapChangedListener {
     private static final Logger log = LoggerFactory.getLogger(P2PService.class);
 
+    // Peers with an older version don't know the RefreshTTLBundleMessage and would let our data expire. It is
+    // therefore disabled by default and we refresh each data entry with its own RefreshTTLMessage. It can be enabled
+    // once all peers have been updated.
+    private static boolean refreshTTLBundleEnabled = false;
+
+    public static void setRefreshTTLBundleEnabled(boolean refreshTTLBundleEnabled) {
+        P2PService.refreshTTLBundleEnabled = refreshTTLBundleEnabled;
+    }
+
+    public static boolean isRefreshTTLBundleEnabled() {
+        return refreshTTLBundleEnabled;
+    }
+
+    // The NioNetworkNode serves many peers without a thread per connection. It supports only localhost for now.
+    private static boolean useNioNetworkNode = false;
+
+    public static void setUseNioNetworkNode(boolean useNioNetworkNode) {
+        P2PService.useNioNetworkNode = useNioNetworkNode;
+    }
+
     private final SeedNodesRepository seedNodesRepository;
     private final int port;
     private final File torDir;
@@ -68,6 +89,9 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
     private PeerManager peerManager;
     private RequestDataManager requestDataManager;
     private PeerExchangeManager peerExchangeManager;
+    // Not used by seed nodes
+    @Nullable
+    private MailboxDecrypter mailboxDecrypter;
 
     @SuppressWarnings("FieldCanBeLocal")
     private MonadicBinding<Boolean> networkReadyBinding;
@@ -114,7 +138,13 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
     }
 
     private void init(boolean useLocalhost, int networkId, File storageDir) {
-        networkNode = useLocalhost ? new LocalhostNetworkNode(port) : new TorNetworkNode(port, torDir);
+        if (useLocalhost) {
+            networkNode = useNioNetworkNode ? new NioNetworkNode(port) : new LocalhostNetworkNode(port);
+        } else {
+            if (useNioNetworkNode)
+                log.warn("The NioNetworkNode does not support tor. We use the TorNetworkNode.");
+            networkNode = new TorNetworkNode(port, torDir);
+        }
         networkNode.addConnectionListener(this);
         networkNode.addMessageListener(this);
 
@@ -126,6 +156,10 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         p2PDataStorage = new P2PDataStorage(broadcaster, networkNode, storageDir);
         p2PDataStorage.addHashMapChangedListener(this);
 
+        if (optionalEncryptionService.isPresent())
+            mailboxDecrypter = new MailboxDecrypter(networkNode, optionalEncryptionService.get(),
+                    this::onMailboxMessageDecrypted);
+
         requestDataManager = new RequestDataManager(networkNode, p2PDataStorage, peerManager, seedNodeAddresses, this);
 
         peerExchangeManager = new PeerExchangeManager(networkNode, peerManager, seedNodeAddresses);
@@ -166,6 +200,9 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
             if (p2PDataStorage != null)
                 p2PDataStorage.shutDown();
 
+            if (mailboxDecrypter != null)
+                mailboxDecrypter.shutDown();
+
             if (peerManager != null)
                 peerManager.shutDown();
 
@@ -231,6 +268,13 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
 
         checkArgument(networkNode.getNodeAddress() != null, "Address must be set when we have the hidden service ready");
 
+        // The mailbox entries we got before our address was known could not be checked
+        if (mailboxDecrypter != null)
+            p2PDataStorage.getMap().values().stream()
+                    .filter(protectedStorageEntry -> protectedStorageEntry instanceof ProtectedMailboxStorageEntry)
+                    .forEach(protectedStorageEntry ->
+                            mailboxDecrypter.add((ProtectedMailboxStorageEntry) protectedStorageEntry));
+
         hiddenServicePublished.set(true);
 
         p2pServiceListeners.stream().forEach(SetupListener::onHiddenServicePublished);
@@ -329,7 +373,7 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
             if (optionalEncryptionService.isPresent()) {
                 try {
                     PrefixedSealedAndSignedMessage prefixedSealedAndSignedMessage = (PrefixedSealedAndSignedMessage) message;
-                    if (verifyAddressPrefixHash(prefixedSealedAndSignedMessage)) {
+                    if (MailboxDecrypter.verifyAddressPrefixHash(networkNode.getNodeAddress(), prefixedSealedAndSignedMessage)) {
                         // We set connectionType to that connection to avoid that is get closed when 
                         // we get too many connection attempts.
                         connection.setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
@@ -361,12 +405,15 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
 
     @Override
     public void onAdded(ProtectedStorageEntry protectedStorageEntry) {
-        if (protectedStorageEntry instanceof ProtectedMailboxStorageEntry)
-            processProtectedMailboxStorageEntry((ProtectedMailboxStorageEntry) protectedStorageEntry);
+        // Seed nodes don't have set the encryptionService
+        if (mailboxDecrypter != null && protectedStorageEntry instanceof ProtectedMailboxStorageEntry)
+            mailboxDecrypter.add((ProtectedMailboxStorageEntry) protectedStorageEntry);
     }
 
     @Override
     public void onRemoved(ProtectedStorageEntry data) {
+        if (mailboxDecrypter != null && data instanceof ProtectedMailboxStorageEntry)
+            mailboxDecrypter.onRemoved((ProtectedMailboxStorageEntry) data);
     }
 
 
@@ -422,38 +469,22 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
     // MailboxMessages
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    private void processProtectedMailboxStorageEntry(ProtectedMailboxStorageEntry protectedMailboxStorageEntry) {
-        // Seed nodes don't have set the encryptionService
-        if (optionalEncryptionService.isPresent()) {
-            Log.traceCall();
-            MailboxStoragePayload mailboxStoragePayload = protectedMailboxStorageEntry.getMailboxStoragePayload();
-            PrefixedSealedAndSignedMessage prefixedSealedAndSignedMessage = mailboxStoragePayload.prefixedSealedAndSignedMessage;
-            if (verifyAddressPrefixHash(prefixedSealedAndSignedMessage)) {
-                try {
-                    DecryptedMsgWithPubKey decryptedMsgWithPubKey = optionalEncryptionService.get().decryptAndVerify(
-                            prefixedSealedAndSignedMessage.sealedAndSigned);
-                    if (decryptedMsgWithPubKey.message instanceof MailboxMessage) {
-                        MailboxMessage mailboxMessage = (MailboxMessage) decryptedMsgWithPubKey.message;
-                        NodeAddress senderNodeAddress = mailboxMessage.getSenderNodeAddress();
-                        checkNotNull(senderNodeAddress, "senderAddress must not be null for mailbox messages");
-
-                        mailboxMap.put(mailboxMessage.getUID(), protectedMailboxStorageEntry);
-                        log.trace("Decryption of SealedAndSignedMessage succeeded. senderAddress="
-                                + senderNodeAddress + " / my address=" + getAddress());
-                        decryptedMailboxListeners.stream().forEach(
-                                e -> e.onMailboxMessageAdded(decryptedMsgWithPubKey, senderNodeAddress));
-                    } else {
-                        log.warn("tryDecryptMailboxData: Expected MailboxMessage but got other type. " +
-                                "decryptedMsgWithPubKey.message=", decryptedMsgWithPubKey.message);
-                    }
-                } catch (CryptoException e) {
-                    log.trace("Decryption of SealedAndSignedMessage failed. " +
-                            "That is expected if the message is not intended for us. " + e.getMessage());
-                }
-            } else {
-                log.info("Wrong blurredAddressHash. The message is not intended for us.");
-            }
+    // Called from the mailboxDecrypter in the order the entries were added
+    private void onMailboxMessageDecrypted(ProtectedMailboxStorageEntry protectedMailboxStorageEntry,
+                                           DecryptedMsgWithPubKey decryptedMsgWithPubKey) {
+        Log.traceCall();
+        MailboxMessage mailboxMessage = (MailboxMessage) decryptedMsgWithPubKey.message;
+        NodeAddress senderNodeAddress = mailboxMessage.getSenderNodeAddress();
+        if (senderNodeAddress == null) {
+            log.warn("senderAddress must not be null for mailbox messages. We ignore the message.");
+            return;
         }
+
+        mailboxMap.put(mailboxMessage.getUID(), protectedMailboxStorageEntry);
+        log.trace("Decryption of SealedAndSignedMessage succeeded. senderAddress="
+                + senderNodeAddress + " / my address=" + getAddress());
+        decryptedMailboxListeners.stream().forEach(
+                e -> e.onMailboxMessageAdded(decryptedMsgWithPubKey, senderNodeAddress));
     }
 
     public void sendEncryptedMailboxMessage(NodeAddress peersNodeAddress, PubKeyRing peersPubKeyRing,
@@ -648,6 +679,31 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         }
     }
 
+    // Refreshes all data with one signature. If the RefreshTTLBundleMessage is not enabled each data entry gets
+    // refreshed with its own message.
+    public boolean refreshTTL(Collection<? extends StoragePayload> storagePayloads, boolean isDataOwner) {
+        Log.traceCall();
+        checkArgument(optionalKeyRing.isPresent(), "keyRing not set. Seems that is called on a seed node which must not happen.");
+        if (!refreshTTLBundleEnabled) {
+            boolean result = true;
+            for (StoragePayload storagePayload : storagePayloads) {
+                result &= refreshTTL(storagePayload, isDataOwner);
+            }
+            return result;
+        } else if (isBootstrapped()) {
+            try {
+                RefreshTTLBundleMessage refreshTTLBundleMessage = p2PDataStorage.getRefreshTTLBundleMessage(storagePayloads,
+                        optionalKeyRing.get().getSignatureKeyPair());
+                return p2PDataStorage.refreshTTL(refreshTTLBundleMessage, networkNode.getNodeAddress(), isDataOwner);
+            } catch (CryptoException e) {
+                log.error("Signing at getRefreshTTLBundleMessage failed. That should never happen.");
+                return false;
+            }
+        } else {
+            throw new NetworkNotReadyException();
+        }
+    }
+
     public boolean removeData(StoragePayload storagePayload, boolean isDataOwner) {
         Log.traceCall();
         checkArgument(optionalKeyRing.isPresent(), "keyRing not set. Seems that is called on a seed node which must not happen.");
@@ -707,6 +763,10 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         return networkNode;
     }
 
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
     public NodeAddress getAddress() {
         return networkNode.getNodeAddress();
     }
@@ -733,14 +793,4 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    private boolean verifyAddressPrefixHash(PrefixedSealedAndSignedMessage prefixedSealedAndSignedMessage) {
-        if (networkNode.getNodeAddress() != null) {
-            byte[] blurredAddressHash = networkNode.getNodeAddress().getAddressPrefixHash();
-            return blurredAddressHash != null &&
-                    Arrays.equals(blurredAddressHash, prefixedSealedAndSignedMessage.addressPrefixHash);
-        } else {
-            log.debug("myOnionAddress is null at verifyAddressPrefixHash. That is expected at startup.");
-            return false;
-        }
-    }
 }
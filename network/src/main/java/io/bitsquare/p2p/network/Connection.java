@@ -1,11 +1,15 @@
 package io.bitsquare.p2p.network;
 
-import com.google.common.util.concurrent.CycleDetectingLockFactory;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import io.bitsquare.app.Log;
 import io.bitsquare.app.Version;
-import io.bitsquare.common.ByteArrayUtils;
 import io.bitsquare.common.UserThread;
 import io.bitsquare.common.util.Tuple2;
 import io.bitsquare.p2p.Message;
@@ -16,11 +20,13 @@ import io.bitsquare.p2p.network.messages.SendersNodeAddressMessage;
 import io.bitsquare.p2p.peers.keepalive.messages.KeepAliveMessage;
 import io.bitsquare.p2p.peers.keepalive.messages.Ping;
 import io.bitsquare.p2p.peers.keepalive.messages.Pong;
+import io.bitsquare.p2p.storage.messages.RefreshTTLBundleMessage;
 import io.bitsquare.p2p.storage.messages.RefreshTTLMessage;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,13 +35,14 @@ import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -63,16 +70,44 @@ public class Connection implements MessageListener {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private static final int MAX_MSG_SIZE = 100 * 1024;              // 100 kb of compressed data
-    //TODO decrease limits again after testing
-    private static final int MSG_THROTTLE_PER_SEC = 50;              // With MAX_MSG_SIZE of 100kb results in bandwidth of 5 mbit/sec 
-    private static final int MSG_THROTTLE_PER_10_SEC = 500;           // With MAX_MSG_SIZE of 100kb results in bandwidth of 50 mbit/sec for 10 sec 
     private static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(60);
 
     public static int getMaxMsgSize() {
         return MAX_MSG_SIZE;
     }
 
-    private static final CycleDetectingLockFactory cycleDetectingLockFactory = CycleDetectingLockFactory.newInstance(CycleDetectingLockFactory.Policies.THROW);
+    // The wire format we use for outbound connections. For inbound connections we use the format chosen by the peer.
+    // Java serialization is the default as peers running an older version do not support the framed format.
+    private static volatile WireFormat preferredWireFormat = WireFormat.JAVA_SERIALIZATION;
+
+    public static void setPreferredWireFormat(WireFormat preferredWireFormat) {
+        Connection.preferredWireFormat = preferredWireFormat;
+    }
+
+    public static WireFormat getPreferredWireFormat() {
+        return preferredWireFormat;
+    }
+
+    // Creates the RateLimiter for the inbound messages of each new connection
+    private static volatile Supplier<RateLimiter> rateLimiterFactory = TokenBucketRateLimiter::new;
+
+    public static void setRateLimiterFactory(Supplier<RateLimiter> rateLimiterFactory) {
+        Connection.rateLimiterFactory = rateLimiterFactory;
+    }
+
+    // Max. number of messages waiting for being written. If the peer does not read fast enough the sendMessage call
+    // fails instead of piling up messages in memory.
+    private static final int MAX_OUTBOUND_QUEUE_SIZE = 100;
+
+    // Max. time we wait at shut down until the CloseConnectionMessage got written
+    private static final long CLOSE_CONNECTION_MESSAGE_TIMEOUT_MS = 1000;
+
+    // Shared by all connections. A connection uses a thread only while draining its outbound queue, so a slow peer
+    // does not hold back the messages to other peers.
+    private static final ExecutorService writerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("Connection.Writer-%d")
+            .setDaemon(true)
+            .build());
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -85,24 +120,36 @@ public class Connection implements MessageListener {
     private final String portInfo;
     private final String uid;
     private final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-    private final ReentrantLock objectOutputStreamLock = cycleDetectingLockFactory.newReentrantLock("objectOutputStreamLock");
+    private final BlockingQueue<Tuple2<Message, SettableFuture<Connection>>> outboundQueue =
+            new LinkedBlockingQueue<>(MAX_OUTBOUND_QUEUE_SIZE);
+    // Set while a writer task is scheduled or running, so there is never more than one writer per connection
+    private final AtomicBoolean writerScheduled = new AtomicBoolean();
     // holder of state shared between InputHandler and Connection
     private final SharedModel sharedModel;
     private final Statistic statistic;
+    // Only used by the InputHandler
+    private final RateLimiter rateLimiter;
 
     // set in init
     private InputHandler inputHandler;
+    private WireFormat wireFormat;
+    // Set if the peer answered our framed preamble with a java serialization stream header
+    private volatile boolean framedFormatRejected;
+    // Only one of both is set, depending on the wireFormat
     private ObjectOutputStream objectOutputStream;
+    private DataOutputStream framedOutputStream;
+    // Counts the bytes written to the socket, only accessed by the writer
+    private CountingOutputStream countingOutputStream;
+    // Only set if the connection uses the non blocking transport. We don't use the streams in that case.
+    @Nullable
+    private NioChannel nioChannel;
 
     // mutable data, set from other threads but not changed internally.
     private Optional<NodeAddress> peersNodeAddressOptional = Optional.empty();
     private volatile boolean stopped;
-    private PeerType peerType;
+    private volatile PeerType peerType;
     private final ObjectProperty<NodeAddress> peersNodeAddressProperty = new SimpleObjectProperty<>();
-    private final List<Tuple2<Long, Serializable>> messageTimeStamps = new ArrayList<>();
     private final CopyOnWriteArraySet<MessageListener> messageListeners = new CopyOnWriteArraySet<>();
-    private volatile long lastSendTimeStamp = 0;
-    ;
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -110,10 +157,30 @@ public class Connection implements MessageListener {
 
     Connection(Socket socket, MessageListener messageListener, ConnectionListener connectionListener,
                @Nullable NodeAddress peersNodeAddress) {
+        this(socket, messageListener, connectionListener, peersNodeAddress, preferredWireFormat);
+    }
+
+    // The wireFormat is only used by the outbound side, the inbound side mirrors the format of the peer.
+    Connection(Socket socket, MessageListener messageListener, ConnectionListener connectionListener,
+               @Nullable NodeAddress peersNodeAddress, WireFormat wireFormat) {
+        this(socket, null, messageListener, connectionListener, peersNodeAddress, wireFormat);
+    }
+
+    // Used by the NioNetworkNode. The connection reads and writes in the thread of the selectorLoop.
+    Connection(SocketChannel socketChannel, SelectorLoop selectorLoop, MessageListener messageListener,
+               ConnectionListener connectionListener, @Nullable NodeAddress peersNodeAddress) {
+        this(socketChannel.socket(), selectorLoop, messageListener, connectionListener, peersNodeAddress,
+                WireFormat.FRAMED);
+    }
+
+    private Connection(Socket socket, @Nullable SelectorLoop selectorLoop, MessageListener messageListener,
+                       ConnectionListener connectionListener, @Nullable NodeAddress peersNodeAddress,
+                       WireFormat wireFormat) {
         this.socket = socket;
         this.connectionListener = connectionListener;
         uid = UUID.randomUUID().toString();
         statistic = new Statistic();
+        rateLimiter = rateLimiterFactory.get();
 
         addMessageListener(messageListener);
 
@@ -124,23 +191,18 @@ public class Connection implements MessageListener {
         else
             portInfo = "localPort=" + socket.getLocalPort() + "/port=" + socket.getPort();
 
-        init(peersNodeAddress);
+        init(peersNodeAddress, selectorLoop, wireFormat);
     }
 
-    private void init(@Nullable NodeAddress peersNodeAddress) {
+    private void init(@Nullable NodeAddress peersNodeAddress, @Nullable SelectorLoop selectorLoop,
+                      WireFormat wireFormat) {
         try {
-            socket.setSoTimeout(SOCKET_TIMEOUT);
-            // Need to access first the ObjectOutputStream otherwise the ObjectInputStream would block
-            // See: https://stackoverflow.com/questions/5658089/java-creating-a-new-objectinputstream-blocks/5658109#5658109
-            // When you construct an ObjectInputStream, in the constructor the class attempts to read a header that 
-            // the associated ObjectOutputStream on the other end of the connection has written.
-            // It will not return until that header has been read. 
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
-
-            // We create a thread for handling inputStream data
-            inputHandler = new InputHandler(sharedModel, objectInputStream, portInfo, this);
-            singleThreadExecutor.submit(inputHandler);
+            if (selectorLoop == null)
+                initStreams(wireFormat, socket.getInputStream());
+            else if (this instanceof InboundConnection)
+                initInboundChannel(selectorLoop);
+            else
+                initOutboundChannel(selectorLoop);
         } catch (IOException e) {
             sharedModel.handleConnectionException(e);
         }
@@ -156,76 +218,119 @@ public class Connection implements MessageListener {
         UserThread.execute(() -> connectionListener.onConnection(this));
     }
 
+    // The channel is still in blocking mode, so we can detect the format of the peer from its first bytes. Peers not
+    // supporting the framed format get a stream based connection.
+    private void initInboundChannel(SelectorLoop selectorLoop) throws IOException {
+        socket.setSoTimeout(SOCKET_TIMEOUT);
+        PushbackInputStream inputStream = new PushbackInputStream(socket.getInputStream(), WireFormat.PREAMBLE_LENGTH);
+        if (WireFormat.detect(inputStream) == WireFormat.FRAMED) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(WireFormat.getFramedPreamble());
+            outputStream.flush();
+            initNioChannel(selectorLoop);
+        } else {
+            // The detected bytes got pushed back, the ObjectInputStream reads them as its stream header
+            initStreams(WireFormat.JAVA_SERIALIZATION, inputStream);
+        }
+    }
 
-    ///////////////////////////////////////////////////////////////////////////////////////////
-    // API
-    ///////////////////////////////////////////////////////////////////////////////////////////
+    // We exchange the preamble while the channel is still in blocking mode, so the NetworkNode knows right after
+    // creating the connection whether the peer supports the framed format.
+    private void initOutboundChannel(SelectorLoop selectorLoop) throws IOException {
+        socket.setSoTimeout(SOCKET_TIMEOUT);
+        exchangeFramedPreamble(socket.getOutputStream(),
+                new PushbackInputStream(socket.getInputStream(), WireFormat.PREAMBLE_LENGTH));
+        initNioChannel(selectorLoop);
+    }
 
-    // Called form various threads
-    public void sendMessage(Message message) {
-        if (!stopped) {
-            try {
-                Log.traceCall();
-                // Throttle outbound messages
-                if (System.currentTimeMillis() - lastSendTimeStamp < 20) {
-                    log.info("We got 2 sendMessage requests in less then 20 ms. We set the thread to sleep " +
-                                    "for 50 ms to avoid that we flood our peer. lastSendTimeStamp={}, now={}, elapsed={}",
-                            lastSendTimeStamp, System.currentTimeMillis(), (System.currentTimeMillis() - lastSendTimeStamp));
-                    Thread.sleep(50);
-                }
+    private void initNioChannel(SelectorLoop selectorLoop) throws IOException {
+        // The non blocking transport supports only the framed format. The NioChannel pushes the received frames 
+        // to the InputHandler, so we don't need a thread per connection.
+        wireFormat = WireFormat.FRAMED;
+        nioChannel = new NioChannel(socket.getChannel(), selectorLoop);
+        inputHandler = new InputHandler(sharedModel, portInfo, this);
+        nioChannel.start(inputHandler);
+    }
 
-                lastSendTimeStamp = System.currentTimeMillis();
-                String peersNodeAddress = peersNodeAddressOptional.isPresent() ? peersNodeAddressOptional.get().toString() : "null";
-                int size = ByteArrayUtils.objectToByteArray(message).length;
-
-                if (message instanceof Ping || message instanceof RefreshTTLMessage) {
-                    // pings and offer refresh msg we dont want to log in production
-                    log.trace("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
-                                    "Sending direct message to peer" +
-                                    "Write object to outputStream to peer: {} (uid={})\ntruncated message={} / size={}" +
-                                    "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
-                            peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100), size);
-                } else if (message instanceof PrefixedSealedAndSignedMessage && peersNodeAddressOptional.isPresent()) {
-                    setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
-
-                    log.info("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
-                                    "Sending direct message to peer" +
-                                    "Write object to outputStream to peer: {} (uid={})\ntruncated message={} / size={}" +
-                                    "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
-                            peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100), size);
-                } else {
-                    log.info("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
-                                    "Write object to outputStream to peer: {} (uid={})\ntruncated message={} / size={}" +
-                                    "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
-                            peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100), size);
-                }
+    private void initStreams(WireFormat outboundWireFormat, InputStream socketInputStream) throws IOException {
+        socket.setSoTimeout(SOCKET_TIMEOUT);
+        // The counting streams sit directly on the socket streams, so we get the real number of bytes moved 
+        // without serializing the messages a second time for measuring the size.
+        // The writer flushes once after it has drained the outbound queue, so we buffer above the counting stream.
+        countingOutputStream = new CountingOutputStream(socket.getOutputStream());
+        CountingInputStream countingInputStream = new CountingInputStream(socketInputStream);
+        PushbackInputStream inputStream = new PushbackInputStream(countingInputStream, WireFormat.PREAMBLE_LENGTH);
+
+        // The outbound side decides about the wire format, the inbound side detects it from the first bytes.
+        if (this instanceof InboundConnection)
+            wireFormat = WireFormat.detect(inputStream);
+        else
+            wireFormat = outboundWireFormat;
 
-                if (!stopped) {
-                    objectOutputStreamLock.lock();
-                    objectOutputStream.writeObject(message);
-                    objectOutputStream.flush();
+        if (wireFormat == WireFormat.FRAMED) {
+            framedOutputStream = new DataOutputStream(new BufferedOutputStream(countingOutputStream));
+            if (this instanceof InboundConnection) {
+                framedOutputStream.write(WireFormat.getFramedPreamble());
+                framedOutputStream.flush();
+            } else {
+                exchangeFramedPreamble(framedOutputStream, inputStream);
+            }
 
-                    statistic.addSentBytes(size);
-                    statistic.addSentMessage(message);
+            // We create a thread for handling inputStream data
+            inputHandler = new InputHandler(sharedModel, new DataInputStream(inputStream), countingInputStream, portInfo, this);
+        } else {
+            // Need to access first the ObjectOutputStream otherwise the ObjectInputStream would block
+            // See: https://stackoverflow.com/questions/5658089/java-creating-a-new-objectinputstream-blocks/5658109#5658109
+            // When you construct an ObjectInputStream, in the constructor the class attempts to read a header that 
+            // the associated ObjectOutputStream on the other end of the connection has written.
+            // It will not return until that header has been read. 
+            objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(countingOutputStream));
+            objectOutputStream.flush();
+            ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
 
-                    // We don't want to get the activity ts updated by ping/pong msg
-                    if (!(message instanceof KeepAliveMessage))
-                        statistic.updateLastActivityTimestamp();
-                }
-            } catch (IOException e) {
-                // an exception lead to a shutdown
-                sharedModel.handleConnectionException(e);
-            } catch (Throwable t) {
-                log.error(t.getMessage());
-                t.printStackTrace();
-                sharedModel.handleConnectionException(t);
-            } finally {
-                if (objectOutputStreamLock.isLocked())
-                    objectOutputStreamLock.unlock();
+            // We create a thread for handling inputStream data
+            inputHandler = new InputHandler(sharedModel, objectInputStream, countingInputStream, portInfo, this);
+        }
+        singleThreadExecutor.submit(inputHandler);
+    }
+
+    // Called by the outbound side. A peer not supporting the framed format sends its ObjectOutputStream header
+    // instead of mirroring our preamble. We fail then and the NetworkNode connects again using java serialization.
+    private void exchangeFramedPreamble(OutputStream outputStream, PushbackInputStream inputStream) throws IOException {
+        outputStream.write(WireFormat.getFramedPreamble());
+        outputStream.flush();
+        if (!WireFormat.isFramedPreamble(WireFormat.readPreamble(inputStream))) {
+            framedFormatRejected = true;
+            throw new StreamCorruptedException("Peer does not support the framed wire format.");
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adds the message to the outbound queue of the connection. Can be called from any thread.
+     * The returned future completes on the UserThread after the message was written to the socket. It fails with a
+     * SendQueueFullException if the peer does not keep up with our messages.
+     */
+    public SettableFuture<Connection> sendMessage(Message message) {
+        Log.traceCall();
+        SettableFuture<Connection> resultFuture = SettableFuture.create();
+        if (!stopped) {
+            if (outboundQueue.offer(new Tuple2<>(message, resultFuture))) {
+                scheduleWriter();
+            } else {
+                log.warn("Outbound queue is full. We don't send the message {} to peer {}.",
+                        StringUtils.abbreviate(message.toString(), 100), peersNodeAddressOptional);
+                UserThread.execute(() -> resultFuture.setException(new SendQueueFullException(this, MAX_OUTBOUND_QUEUE_SIZE)));
             }
         } else {
             log.debug("called sendMessage but was already stopped");
+            UserThread.execute(() -> resultFuture.setException(new SocketException("Connection is already stopped. connection=" + this)));
         }
+        return resultFuture;
     }
 
     public void addMessageListener(MessageListener messageListener) {
@@ -246,45 +351,139 @@ public class Connection implements MessageListener {
         return sharedModel.reportInvalidRequest(ruleViolation);
     }
 
-    private boolean violatesThrottleLimit(Serializable serializable) {
-        long now = System.currentTimeMillis();
-        boolean violated = false;
-        //TODO remove serializable storage after network is tested stable
-        if (messageTimeStamps.size() >= MSG_THROTTLE_PER_SEC) {
-            // check if we got more than 10 (MSG_THROTTLE_PER_SEC) msg per sec.
-            long compareValue = messageTimeStamps.get(messageTimeStamps.size() - MSG_THROTTLE_PER_SEC).first;
-            // if duration < 1 sec we received too much messages
-            violated = now - compareValue < TimeUnit.SECONDS.toMillis(1);
-            if (violated) {
-                log.error("violatesThrottleLimit 1 ");
-                log.error("elapsed " + (now - compareValue));
-                log.error("messageTimeStamps: \n\t" + messageTimeStamps.stream()
-                        .map(e -> "\n\tts=" + e.first.toString() + " message=" + e.second.toString())
-                        .collect(Collectors.toList()).toString());
-            }
-        }
 
-        if (messageTimeStamps.size() >= MSG_THROTTLE_PER_10_SEC) {
-            if (!violated) {
-                // check if we got more than 50 msg per 10 sec.
-                long compareValue = messageTimeStamps.get(messageTimeStamps.size() - MSG_THROTTLE_PER_10_SEC).first;
-                // if duration < 10 sec we received too much messages
-                violated = now - compareValue < TimeUnit.SECONDS.toMillis(10);
-
-                if (violated) {
-                    log.error("violatesThrottleLimit 2 ");
-                    log.error("elapsed " + (now - compareValue));
-                    log.error("messageTimeStamps: \n\t" + messageTimeStamps.stream()
-                            .map(e -> "\n\tts=" + e.first.toString() + " message=" + e.second.toString())
-                            .collect(Collectors.toList()).toString());
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Writer
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Runs in a thread of the writerExecutor. Writes all queued messages and flushes only once at the end, so a burst
+    // of messages (e.g. broadcasts) results in a few large writes instead of one small write per message.
+    // We don't check the stopped flag here as the CloseConnectionMessage gets queued during shut down.
+    // With the NioChannel we stop when its write queue is full. The remaining messages stay in the outbound queue and
+    // we continue when the selector thread has written the queued frames.
+    private void writeQueuedMessages() {
+        Thread.currentThread().setName("Connection.Writer-" + uid);
+        List<SettableFuture<Connection>> writtenFutures = new ArrayList<>();
+        try {
+            long countBefore = countingOutputStream != null ? countingOutputStream.getCount() : 0;
+            int nioBytes = 0;
+            int numMessages = 0;
+            Tuple2<Message, SettableFuture<Connection>> entry;
+            while ((nioChannel == null || nioChannel.hasCapacity()) && (entry = outboundQueue.poll()) != null) {
+                Message message = entry.first;
+                writtenFutures.add(entry.second);
+                numMessages++;
+                if (wireFormat == WireFormat.FRAMED) {
+                    // In the framed format we serialize only once
+                    byte[] frame = FramedMessageCodec.encode(message);
+                    if (nioChannel != null) {
+                        // The frame gets queued and is written by the selector thread, which completes the future
+                        Futures.addCallback(nioChannel.send(frame), getNioWriteCallback(entry.second));
+                        writtenFutures.remove(entry.second);
+                        nioBytes += FramedMessageCodec.LENGTH_HEADER_SIZE + frame.length;
+                    } else {
+                        framedOutputStream.writeInt(frame.length);
+                        framedOutputStream.write(frame);
+                    }
+                } else {
+                    objectOutputStream.writeObject(message);
                 }
+                logSentMessage(message);
+
+                statistic.addSentMessage(message);
+                // We don't want to get the activity ts updated by ping/pong msg
+                if (!(message instanceof KeepAliveMessage))
+                    statistic.updateLastActivityTimestamp();
             }
-            // we limit to max 50 (MSG_THROTTLE_PER_10SEC) entries
-            messageTimeStamps.remove(0);
+
+            int size;
+            if (nioChannel != null) {
+                size = nioBytes;
+            } else {
+                if (framedOutputStream != null)
+                    framedOutputStream.flush();
+                else
+                    objectOutputStream.flush();
+
+                // We get the size from the bytes written to the socket
+                size = (int) (countingOutputStream.getCount() - countBefore);
+            }
+            statistic.addSentBytes(size);
+            log.debug("Wrote {} messages with {} bytes to peer {} (uid={})", numMessages, size,
+                    peersNodeAddressOptional, uid);
+
+            if (!writtenFutures.isEmpty())
+                UserThread.execute(() -> writtenFutures.stream().forEach(future -> future.set(this)));
+        } catch (Throwable t) {
+            // The messages still waiting in the queue cannot be sent anymore either
+            List<SettableFuture<Connection>> failedFutures = new ArrayList<>(writtenFutures);
+            Tuple2<Message, SettableFuture<Connection>> entry;
+            while ((entry = outboundQueue.poll()) != null)
+                failedFutures.add(entry.second);
+            UserThread.execute(() -> failedFutures.stream().forEach(future -> future.setException(t)));
+
+            if (t instanceof IOException) {
+                // an exception lead to a shutdown
+                sharedModel.handleConnectionException(t);
+            } else {
+                log.error(t.getMessage());
+                t.printStackTrace();
+                sharedModel.handleConnectionException(t);
+            }
+        } finally {
+            writerScheduled.set(false);
+            // A message might have been added after our last poll but before we reset the flag
+            scheduleWriter();
         }
+    }
+
+    // Can be called from any thread. If the write queue of the NioChannel is full, the callback of the next written
+    // frame schedules the writer.
+    private void scheduleWriter() {
+        if (!outboundQueue.isEmpty() && (nioChannel == null || nioChannel.hasCapacity())
+                && writerScheduled.compareAndSet(false, true))
+            writerExecutor.execute(this::writeQueuedMessages);
+    }
+
+    // Runs in the thread of the SelectorLoop
+    private FutureCallback<Void> getNioWriteCallback(SettableFuture<Connection> resultFuture) {
+        return new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                UserThread.execute(() -> resultFuture.set(Connection.this));
+                scheduleWriter();
+            }
 
-        messageTimeStamps.add(new Tuple2<>(now, serializable));
-        return violated;
+            @Override
+            public void onFailure(@NotNull Throwable throwable) {
+                UserThread.execute(() -> resultFuture.setException(throwable));
+            }
+        };
+    }
+
+    private void logSentMessage(Message message) {
+        String peersNodeAddress = peersNodeAddressOptional.isPresent() ? peersNodeAddressOptional.get().toString() : "null";
+        if (message instanceof Ping || message instanceof RefreshTTLMessage || message instanceof RefreshTTLBundleMessage) {
+            // pings and offer refresh msg we dont want to log in production
+            log.trace("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
+                            "Sending direct message to peer" +
+                            "Write object to outputStream to peer: {} (uid={})\ntruncated message={}" +
+                            "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
+                    peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100));
+        } else if (message instanceof PrefixedSealedAndSignedMessage && peersNodeAddressOptional.isPresent()) {
+            setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
+
+            log.info("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
+                            "Sending direct message to peer" +
+                            "Write object to outputStream to peer: {} (uid={})\ntruncated message={}" +
+                            "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
+                    peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100));
+        } else {
+            log.info("\n\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n" +
+                            "Write object to outputStream to peer: {} (uid={})\ntruncated message={}" +
+                            "\n>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>\n",
+                    peersNodeAddress, uid, StringUtils.abbreviate(message.toString(), 100));
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -349,6 +548,11 @@ public class Connection implements MessageListener {
         return peerType;
     }
 
+    // Messages waiting for being written
+    public int getOutboundQueueSize() {
+        return outboundQueue.size();
+    }
+
     public ReadOnlyObjectProperty<NodeAddress> peersNodeAddressProperty() {
         return peersNodeAddressProperty;
     }
@@ -361,6 +565,14 @@ public class Connection implements MessageListener {
         return statistic;
     }
 
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    boolean isFramedFormatRejected() {
+        return framedFormatRejected;
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // ShutDown
@@ -388,11 +600,14 @@ public class Connection implements MessageListener {
                     try {
                         String reason = closeConnectionReason == CloseConnectionReason.RULE_VIOLATION ?
                                 sharedModel.getRuleViolation().name() : closeConnectionReason.name();
-                        sendMessage(new CloseConnectionMessage(reason));
-
-                        setStopFlags();
-
-                        Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+                        // The message only gets queued. We wait until the writer has written it before we stop the
+                        // input handler, which closes the socket.
+                        Uninterruptibles.getUninterruptibly(sendMessage(new CloseConnectionMessage(reason)),
+                                CLOSE_CONNECTION_MESSAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        log.debug("CloseConnectionMessage was not written within {} ms", CLOSE_CONNECTION_MESSAGE_TIMEOUT_MS);
+                    } catch (ExecutionException e) {
+                        log.debug("Sending CloseConnectionMessage failed. " + e.getCause());
                     } catch (Throwable t) {
                         log.error(t.getMessage());
                         t.printStackTrace();
@@ -417,6 +632,8 @@ public class Connection implements MessageListener {
         sharedModel.stop();
         if (inputHandler != null)
             inputHandler.stop();
+        if (nioChannel != null)
+            nioChannel.stop();
     }
 
     private void doShutDown(CloseConnectionReason closeConnectionReason, @Nullable Runnable shutDownCompleteHandler) {
@@ -430,6 +647,8 @@ public class Connection implements MessageListener {
             log.error("Exception at shutdown. " + e.getMessage());
             e.printStackTrace();
         } finally {
+            if (nioChannel != null)
+                nioChannel.close();
             MoreExecutors.shutdownAndAwaitTermination(singleThreadExecutor, 500, TimeUnit.MILLISECONDS);
 
             log.debug("Connection shutdown complete " + this.toString());
@@ -470,6 +689,7 @@ public class Connection implements MessageListener {
                 "peerAddress=" + peersNodeAddressOptional +
                 ", peerType=" + peerType +
                 ", portInfo=" + portInfo +
+                ", wireFormat=" + wireFormat +
                 ", uid='" + uid + '\'' +
                 ", sharedSpace=" + sharedModel.toString() +
                 ", stopped=" + stopped +
@@ -504,14 +724,8 @@ public class Connection implements MessageListener {
 
         public boolean reportInvalidRequest(RuleViolation ruleViolation) {
             log.warn("We got reported an corrupt request " + ruleViolation + "\n\tconnection=" + this);
-            int numRuleViolations;
-            if (ruleViolations.contains(ruleViolation))
-                numRuleViolations = ruleViolations.get(ruleViolation);
-            else
-                numRuleViolations = 0;
-
-            numRuleViolations++;
-            ruleViolations.put(ruleViolation, numRuleViolations);
+            connection.statistic.addRuleViolation(ruleViolation);
+            int numRuleViolations = ruleViolations.merge(ruleViolation, 1, Integer::sum);
 
             if (numRuleViolations >= ruleViolation.maxTolerance) {
                 log.warn("We close connection as we received too many corrupt requests.\n" +
@@ -582,21 +796,50 @@ public class Connection implements MessageListener {
     // InputHandler
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    // Runs in same thread as Connection
-    private static class InputHandler implements Runnable {
+    // Runs in same thread as Connection or in the thread of the SelectorLoop if we use the NioChannel
+    private static class InputHandler implements Runnable, NioChannel.FrameHandler {
         private static final Logger log = LoggerFactory.getLogger(InputHandler.class);
 
         private final SharedModel sharedModel;
+        // Only one of both is set if we read from streams, none if the NioChannel pushes the frames to us
+        @Nullable
         private final ObjectInputStream objectInputStream;
+        @Nullable
+        private final DataInputStream framedInputStream;
+        // Counts the bytes read from the socket, not set if we use the NioChannel
+        @Nullable
+        private final CountingInputStream countingInputStream;
         private final String portInfo;
         private final MessageListener messageListener;
 
         private volatile boolean stopped;
         private long lastReadTimeStamp;
 
-        public InputHandler(SharedModel sharedModel, ObjectInputStream objectInputStream, String portInfo, MessageListener messageListener) {
+        public InputHandler(SharedModel sharedModel, ObjectInputStream objectInputStream, CountingInputStream countingInputStream,
+                            String portInfo, MessageListener messageListener) {
             this.sharedModel = sharedModel;
             this.objectInputStream = objectInputStream;
+            this.framedInputStream = null;
+            this.countingInputStream = countingInputStream;
+            this.portInfo = portInfo;
+            this.messageListener = messageListener;
+        }
+
+        public InputHandler(SharedModel sharedModel, DataInputStream framedInputStream, CountingInputStream countingInputStream,
+                            String portInfo, MessageListener messageListener) {
+            this.sharedModel = sharedModel;
+            this.objectInputStream = null;
+            this.framedInputStream = framedInputStream;
+            this.countingInputStream = countingInputStream;
+            this.portInfo = portInfo;
+            this.messageListener = messageListener;
+        }
+
+        public InputHandler(SharedModel sharedModel, String portInfo, MessageListener messageListener) {
+            this.sharedModel = sharedModel;
+            this.objectInputStream = null;
+            this.framedInputStream = null;
+            this.countingInputStream = null;
             this.portInfo = portInfo;
             this.messageListener = messageListener;
         }
@@ -604,7 +847,10 @@ public class Connection implements MessageListener {
         public void stop() {
             if (!stopped) {
                 try {
-                    objectInputStream.close();
+                    if (objectInputStream != null)
+                        objectInputStream.close();
+                    else if (framedInputStream != null)
+                        framedInputStream.close();
                 } catch (IOException e) {
                     log.error("IOException at InputHandler.stop\n" + e.getMessage());
                     e.printStackTrace();
@@ -618,10 +864,37 @@ public class Connection implements MessageListener {
         public void run() {
             try {
                 Thread.currentThread().setName("InputHandler-" + portInfo);
+                checkNotNull(countingInputStream, "countingInputStream must not be null");
                 while (!stopped && !Thread.currentThread().isInterrupted()) {
                     try {
                         log.trace("InputHandler waiting for incoming messages.\n\tConnection=" + sharedModel.connection);
-                        Object rawInputObject = objectInputStream.readObject();
+                        Object rawInputObject;
+                        long countBefore = countingInputStream.getCount();
+                        if (framedInputStream != null) {
+                            int frameLength = framedInputStream.readInt();
+                            if (frameLength <= 0)
+                                throw new StreamCorruptedException("Invalid frame length. frameLength=" + frameLength);
+
+                            // We check the size before reading the payload so we don't buffer oversized messages
+                            if (frameLength > getMaxMsgSize()) {
+                                log.warn("Received frame exceeds max. message size. frameLength=" + frameLength);
+                                if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
+                                    return;
+
+                                skipFully(framedInputStream, frameLength);
+                                continue;
+                            }
+
+                            byte[] frame = new byte[frameLength];
+                            framedInputStream.readFully(frame);
+                            rawInputObject = FramedMessageCodec.decode(frame);
+                        } else {
+                            checkNotNull(objectInputStream, "objectInputStream must not be null");
+                            rawInputObject = objectInputStream.readObject();
+                        }
+                        // The ObjectInputStream might have read ahead a few bytes of the next object, so the size of a 
+                        // single message can be slightly off but the sum over all messages is exact.
+                        int size = (int) (countingInputStream.getCount() - countBefore);
 
                         // Throttle inbound messages
                         if (System.currentTimeMillis() - lastReadTimeStamp < 10) {
@@ -633,108 +906,8 @@ public class Connection implements MessageListener {
 
                         lastReadTimeStamp = System.currentTimeMillis();
 
-                        int size = ByteArrayUtils.objectToByteArray(rawInputObject).length;
-                        if (rawInputObject instanceof Message) {
-                            Message message = (Message) rawInputObject;
-                            Connection connection = sharedModel.connection;
-                            connection.statistic.addReceivedBytes(size);
-                            connection.statistic.addReceivedMessage(message);
-                        }
-                        if (rawInputObject instanceof Pong || rawInputObject instanceof RefreshTTLMessage) {
-                            // pongs and offer refresh msg we dont want to log in production
-                            log.trace("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
-                                            "New data arrived at inputHandler of connection {}.\n" +
-                                            "Received object (truncated)={} / size={}"
-                                            + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
-                                    sharedModel.connection,
-                                    StringUtils.abbreviate(rawInputObject.toString(), 100),
-                                    size);
-                        } else {
-                            log.info("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
-                                            "New data arrived at inputHandler of connection {}.\n" +
-                                            "Received object (truncated)={} / size={}"
-                                            + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
-                                    sharedModel.connection,
-                                    StringUtils.abbreviate(rawInputObject.toString(), 100),
-                                    size);
-                        }
-
-                        if (size > getMaxMsgSize()) {
-                            if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
-                                return;
-                        }
-
-                        Serializable serializable;
-                        if (rawInputObject instanceof Serializable) {
-                            serializable = (Serializable) rawInputObject;
-                        } else {
-                            reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
+                        if (!handleRawInput(rawInputObject, size))
                             return;
-                        }
-
-                        if (sharedModel.connection.violatesThrottleLimit(serializable)) {
-                            if (reportInvalidRequest(RuleViolation.THROTTLE_LIMIT_EXCEEDED))
-                                return;
-                        }
-
-                        if (!(serializable instanceof Message)) {
-                            reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
-                            return;
-                        }
-
-                        Message message = (Message) serializable;
-                        Connection connection = sharedModel.connection;
-                        connection.statistic.addReceivedBytes(size);
-                        connection.statistic.addReceivedMessage(message);
-
-                        if (message.getMessageVersion() != Version.getP2PMessageVersion()) {
-                            log.warn("message.getMessageVersion()=" + message.getMessageVersion());
-                            log.warn("message=" + message);
-                            log.warn("Version.getP2PMessageVersion()=" + Version.getP2PMessageVersion());
-                            reportInvalidRequest(RuleViolation.WRONG_NETWORK_ID);
-                            return;
-                        }
-
-                        if (message instanceof CloseConnectionMessage) {
-                            log.info("CloseConnectionMessage received. Reason={}\n\t" +
-                                    "connection={}", ((CloseConnectionMessage) message).reason, connection);
-                            stop();
-                            sharedModel.shutDown(CloseConnectionReason.CLOSE_REQUESTED_BY_PEER);
-                        } else if (!stopped) {
-                            // We don't want to get the activity ts updated by ping/pong msg
-                            if (!(message instanceof KeepAliveMessage))
-                                connection.statistic.updateLastActivityTimestamp();
-
-                            // First a seed node gets a message form a peer (PreliminaryDataRequest using 
-                            // AnonymousMessage interface) which does not has its hidden service 
-                            // published, so does not know its address. As the IncomingConnection does not has the 
-                            // peersNodeAddress set that connection cannot be used for outgoing messages until we 
-                            // get the address set.
-                            // At the data update message (DataRequest using SendersNodeAddressMessage interface) 
-                            // after the HS is published we get the peers address set.
-
-                            // There are only those messages used for new connections to a peer:
-                            // 1. PreliminaryDataRequest
-                            // 2. DataRequest (implements SendersNodeAddressMessage)
-                            // 3. GetPeersRequest (implements SendersNodeAddressMessage)
-                            // 4. DirectMessage (implements SendersNodeAddressMessage)
-                            if (message instanceof SendersNodeAddressMessage) {
-                                NodeAddress senderNodeAddress = ((SendersNodeAddressMessage) message).getSenderNodeAddress();
-                                Optional<NodeAddress> peersNodeAddressOptional = connection.getPeersNodeAddressOptional();
-                                if (peersNodeAddressOptional.isPresent()) {
-                                    checkArgument(peersNodeAddressOptional.get().equals(senderNodeAddress),
-                                            "senderNodeAddress not matching connections peer address.\n\t" +
-                                                    "message=" + message);
-                                } else {
-                                    connection.setPeersNodeAddress(senderNodeAddress);
-                                }
-                            }
-
-                            if (message instanceof PrefixedSealedAndSignedMessage)
-                                connection.setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
-
-                            messageListener.onMessage(message, connection);
-                        }
                     } catch (ClassNotFoundException | NoClassDefFoundError e) {
                         log.warn(e.getMessage());
                         e.printStackTrace();
@@ -756,6 +929,163 @@ public class Connection implements MessageListener {
             }
         }
 
+
+        ///////////////////////////////////////////////////////////////////////////////////////////
+        // NioChannel.FrameHandler implementation
+        ///////////////////////////////////////////////////////////////////////////////////////////
+
+        // We must not block here as we are called from the selector thread, so we don't apply the sleep based 
+        // throttle used in the blocking read loop.
+        @Override
+        public void onFrame(byte[] frame) {
+            if (!stopped) {
+                try {
+                    Object rawInputObject = FramedMessageCodec.decode(frame);
+                    if (!handleRawInput(rawInputObject, FramedMessageCodec.LENGTH_HEADER_SIZE + frame.length))
+                        stop();
+                } catch (ClassNotFoundException | NoClassDefFoundError e) {
+                    log.warn(e.getMessage());
+                    e.printStackTrace();
+                    reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
+                    stop();
+                } catch (Throwable t) {
+                    onChannelException(t);
+                }
+            }
+        }
+
+        @Override
+        public boolean onFrameSizeExceeded(int frameLength) {
+            return !reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED);
+        }
+
+        @Override
+        public void onChannelException(Throwable throwable) {
+            stop();
+            if (throwable instanceof IOException) {
+                sharedModel.handleConnectionException(throwable);
+            } else {
+                throwable.printStackTrace();
+                sharedModel.handleConnectionException(new Exception(throwable));
+            }
+        }
+
+
+        ///////////////////////////////////////////////////////////////////////////////////////////
+        // Private
+        ///////////////////////////////////////////////////////////////////////////////////////////
+
+        // Returns false if we must not read any further from that connection
+        private boolean handleRawInput(Object rawInputObject, int size) {
+            if (rawInputObject instanceof Pong || rawInputObject instanceof RefreshTTLMessage
+                    || rawInputObject instanceof RefreshTTLBundleMessage) {
+                // pongs and offer refresh msg we dont want to log in production
+                log.trace("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
+                                "New data arrived at inputHandler of connection {}.\n" +
+                                "Received object (truncated)={} / size={}"
+                                + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
+                        sharedModel.connection,
+                        StringUtils.abbreviate(rawInputObject.toString(), 100),
+                        size);
+            } else {
+                log.info("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
+                                "New data arrived at inputHandler of connection {}.\n" +
+                                "Received object (truncated)={} / size={}"
+                                + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
+                        sharedModel.connection,
+                        StringUtils.abbreviate(rawInputObject.toString(), 100),
+                        size);
+            }
+
+            if (size > getMaxMsgSize()) {
+                if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
+                    return false;
+            }
+
+            Serializable serializable;
+            if (rawInputObject instanceof Serializable) {
+                serializable = (Serializable) rawInputObject;
+            } else {
+                reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
+                return false;
+            }
+
+            if (!sharedModel.connection.rateLimiter.tryAcquire(sharedModel.connection.peerType, size)) {
+                if (reportInvalidRequest(RuleViolation.THROTTLE_LIMIT_EXCEEDED))
+                    return false;
+            }
+
+            if (!(serializable instanceof Message)) {
+                reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
+                return false;
+            }
+
+            Message message = (Message) serializable;
+            Connection connection = sharedModel.connection;
+            connection.statistic.addReceivedBytes(size);
+            connection.statistic.addReceivedMessage(message);
+
+            if (message.getMessageVersion() != Version.getP2PMessageVersion()) {
+                log.warn("message.getMessageVersion()=" + message.getMessageVersion());
+                log.warn("message=" + message);
+                log.warn("Version.getP2PMessageVersion()=" + Version.getP2PMessageVersion());
+                reportInvalidRequest(RuleViolation.WRONG_NETWORK_ID);
+                return false;
+            }
+
+            if (message instanceof CloseConnectionMessage) {
+                log.info("CloseConnectionMessage received. Reason={}\n\t" +
+                        "connection={}", ((CloseConnectionMessage) message).reason, connection);
+                stop();
+                sharedModel.shutDown(CloseConnectionReason.CLOSE_REQUESTED_BY_PEER);
+            } else if (!stopped) {
+                // We don't want to get the activity ts updated by ping/pong msg
+                if (!(message instanceof KeepAliveMessage))
+                    connection.statistic.updateLastActivityTimestamp();
+
+                // First a seed node gets a message form a peer (PreliminaryDataRequest using 
+                // AnonymousMessage interface) which does not has its hidden service 
+                // published, so does not know its address. As the IncomingConnection does not has the 
+                // peersNodeAddress set that connection cannot be used for outgoing messages until we 
+                // get the address set.
+                // At the data update message (DataRequest using SendersNodeAddressMessage interface) 
+                // after the HS is published we get the peers address set.
+
+                // There are only those messages used for new connections to a peer:
+                // 1. PreliminaryDataRequest
+                // 2. DataRequest (implements SendersNodeAddressMessage)
+                // 3. GetPeersRequest (implements SendersNodeAddressMessage)
+                // 4. DirectMessage (implements SendersNodeAddressMessage)
+                if (message instanceof SendersNodeAddressMessage) {
+                    NodeAddress senderNodeAddress = ((SendersNodeAddressMessage) message).getSenderNodeAddress();
+                    Optional<NodeAddress> peersNodeAddressOptional = connection.getPeersNodeAddressOptional();
+                    if (peersNodeAddressOptional.isPresent()) {
+                        checkArgument(peersNodeAddressOptional.get().equals(senderNodeAddress),
+                                "senderNodeAddress not matching connections peer address.\n\t" +
+                                        "message=" + message);
+                    } else {
+                        connection.setPeersNodeAddress(senderNodeAddress);
+                    }
+                }
+
+                if (message instanceof PrefixedSealedAndSignedMessage)
+                    connection.setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
+
+                messageListener.onMessage(message, connection);
+            }
+            return true;
+        }
+
+        private static void skipFully(DataInputStream inputStream, int numBytes) throws IOException {
+            int remaining = numBytes;
+            while (remaining > 0) {
+                int skipped = inputStream.skipBytes(remaining);
+                if (skipped <= 0)
+                    throw new EOFException("Stream closed while skipping frame.");
+                remaining -= skipped;
+            }
+        }
+
         private boolean reportInvalidRequest(RuleViolation ruleViolation) {
             boolean causedShutDown = sharedModel.reportInvalidRequest(ruleViolation);
             if (causedShutDown)
@@ -772,4 +1102,4 @@ public class Connection implements MessageListener {
                     '}';
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package io.bitsquare.p2p.network;
+
+import io.bitsquare.p2p.Message;
+import io.bitsquare.p2p.peers.keepalive.messages.Ping;
+import io.bitsquare.p2p.peers.keepalive.messages.Pong;
+
+import java.io.*;
+
+/**
+ * Encodes and decodes the frames used by WireFormat.FRAMED.
+ * <p>
+ * A frame on the wire is: [int frameLength][byte typeId][payload], where frameLength counts the type id and the
+ * payload. This class deals only with the part after the length header, so it can be used by stream based as well
+ * as buffer based transports.
+ * <p>
+ * The keep alive messages make up most of the traffic on an idle connection and get a compact fixed size codec.
+ * All other messages are written with java serialization inside the frame (TYPE_JAVA_SERIALIZED) until they get
+ * their own type id.
+ */
+class FramedMessageCodec {
+    static final int LENGTH_HEADER_SIZE = 4;
+
+    // Type ids must never be changed or reused as they are sent over the wire
+    static final byte TYPE_JAVA_SERIALIZED = 0;
+    static final byte TYPE_PING = 1;
+    static final byte TYPE_PONG = 2;
+
+    static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        if (message instanceof Ping) {
+            Ping ping = (Ping) message;
+            out.writeByte(TYPE_PING);
+            out.writeInt(ping.nonce);
+            out.writeInt(ping.lastRoundTripTime);
+        } else if (message instanceof Pong) {
+            out.writeByte(TYPE_PONG);
+            out.writeInt(((Pong) message).requestNonce);
+        } else {
+            out.writeByte(TYPE_JAVA_SERIALIZED);
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+        }
+        out.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * @param frame The frame without the length header
+     * @return The decoded object. It is not guaranteed to be a Message if the peer used java serialization.
+     */
+    static Object decode(byte[] frame) throws IOException, ClassNotFoundException {
+        if (frame.length == 0)
+            throw new StreamCorruptedException("Empty frame");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+        byte typeId = frame[0];
+        switch (typeId) {
+            case TYPE_JAVA_SERIALIZED:
+                return new ObjectInputStream(in).readObject();
+            case TYPE_PING:
+                return new Ping(in.readInt(), in.readInt());
+            case TYPE_PONG:
+                return new Pong(in.readInt());
+            default:
+                throw new ClassNotFoundException("Unknown message type id in frame. typeId=" + typeId);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package io.bitsquare.p2p.network;
 
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 public class InboundConnection extends Connection {
     public InboundConnection(Socket socket, MessageListener messageListener, ConnectionListener connectionListener) {
         super(socket, messageListener, connectionListener, null);
     }
+
+    InboundConnection(SocketChannel socketChannel, SelectorLoop selectorLoop, MessageListener messageListener,
+                      ConnectionListener connectionListener) {
+        super(socketChannel, selectorLoop, messageListener, connectionListener, null);
+    }
 }
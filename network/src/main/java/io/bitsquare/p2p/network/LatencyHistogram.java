@@ -0,0 +1,91 @@
+package io.bitsquare.p2p.network;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in ms with fixed buckets. Recording is lock free and can be called from any thread.
+ */
+public final class LatencyHistogram {
+    // Upper bounds (inclusive) of the buckets in ms, the last bucket takes all larger values
+    private static final long[] BUCKET_BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long latencyMs) {
+        if (latencyMs < 0)
+            return;
+
+        int index = Arrays.binarySearch(BUCKET_BOUNDS, latencyMs);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sum.add(latencyMs);
+        max.accumulate(latencyMs);
+    }
+
+    public Snapshot getSnapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++)
+            counts[i] = buckets[i].sum();
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Snapshot
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public static final class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            this.count = Arrays.stream(counts).sum();
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getMean() {
+            return count > 0 ? sum / count : 0;
+        }
+
+        /**
+         * @param percentile Value between 0 and 100
+         * @return Upper bound of the bucket containing the percentile, or max if it is in the last bucket
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long counted = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                counted += counts[i];
+                if (counted >= rank)
+                    return Math.min(BUCKET_BOUNDS[i], max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyHistogram.Snapshot{" +
+                    "count=" + count +
+                    ", mean=" + getMean() +
+                    ", p50=" + getPercentile(50) +
+                    ", p99=" + getPercentile(99) +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
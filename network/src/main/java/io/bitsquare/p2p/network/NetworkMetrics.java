@@ -0,0 +1,129 @@
+package io.bitsquare.p2p.network;
+
+import io.bitsquare.p2p.Message;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the p2p network layer over all connections. The counters are updated from the connection threads
+ * without locking and without calls to the UserThread. Use getSnapshot() to read them, e.g. polled by the GUI.
+ */
+public final class NetworkMetrics {
+    private static final LongAdder sentBytes = new LongAdder();
+    private static final LongAdder receivedBytes = new LongAdder();
+    private static final Map<String, LongAdder> sentMessages = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> receivedMessages = new ConcurrentHashMap<>();
+    private static final Map<RuleViolation, LongAdder> ruleViolations = new EnumMap<>(RuleViolation.class);
+    private static final LatencyHistogram roundTripTimes = new LatencyHistogram();
+    // GetDataResponses we have sent (all chunks of a request count as one response)
+    private static final LongAdder getDataResponses = new LongAdder();
+    private static final LongAdder getDataResponseBytes = new LongAdder();
+    private static final LatencyHistogram getDataResponseTimes = new LatencyHistogram();
+
+    static {
+        // The map is not changed after that, so we can read it from any thread
+        for (RuleViolation ruleViolation : RuleViolation.values())
+            ruleViolations.put(ruleViolation, new LongAdder());
+    }
+
+    private NetworkMetrics() {
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Update
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    static void addSentBytes(int value) {
+        sentBytes.add(value);
+    }
+
+    static void addReceivedBytes(int value) {
+        receivedBytes.add(value);
+    }
+
+    static void addSentMessage(Message message) {
+        increment(sentMessages, message);
+    }
+
+    static void addReceivedMessage(Message message) {
+        increment(receivedMessages, message);
+    }
+
+    static void addRuleViolation(RuleViolation ruleViolation) {
+        ruleViolations.get(ruleViolation).increment();
+    }
+
+    static void addRoundTripTime(long roundTripTime) {
+        roundTripTimes.record(roundTripTime);
+    }
+
+    /**
+     * @param bytes        Bytes sent on the connection while sending the response
+     * @param responseTime Time from receiving the request until the response was written
+     */
+    public static void addGetDataResponse(long bytes, long responseTime) {
+        getDataResponses.increment();
+        getDataResponseBytes.add(bytes);
+        getDataResponseTimes.record(responseTime);
+    }
+
+    static void increment(Map<String, LongAdder> counters, Message message) {
+        counters.computeIfAbsent(message.getClass().getSimpleName(), key -> new LongAdder()).increment();
+    }
+
+    static Map<String, Long> getSums(Map<?, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<>();
+        counters.entrySet().stream().forEach(e -> sums.put(e.getKey().toString(), e.getValue().sum()));
+        return Collections.unmodifiableMap(sums);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Snapshot
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public static Snapshot getSnapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Values of all counters at the time of creation. The counters are read one after the other, so the values
+     * might not be exactly consistent with each other.
+     */
+    public static final class Snapshot {
+        public final long timeStamp = System.currentTimeMillis();
+        public final long sentBytes = NetworkMetrics.sentBytes.sum();
+        public final long receivedBytes = NetworkMetrics.receivedBytes.sum();
+        // By simple class name of the message
+        public final Map<String, Long> sentMessages = getSums(NetworkMetrics.sentMessages);
+        public final Map<String, Long> receivedMessages = getSums(NetworkMetrics.receivedMessages);
+        // By name of the RuleViolation
+        public final Map<String, Long> ruleViolations = getSums(NetworkMetrics.ruleViolations);
+        public final LatencyHistogram.Snapshot roundTripTimes = NetworkMetrics.roundTripTimes.getSnapshot();
+        public final long getDataResponses = NetworkMetrics.getDataResponses.sum();
+        public final long getDataResponseBytes = NetworkMetrics.getDataResponseBytes.sum();
+        public final LatencyHistogram.Snapshot getDataResponseTimes = NetworkMetrics.getDataResponseTimes.getSnapshot();
+
+        private Snapshot() {
+        }
+
+        @Override
+        public String toString() {
+            return "NetworkMetrics.Snapshot{" +
+                    "timeStamp=" + timeStamp +
+                    ", sentBytes=" + sentBytes +
+                    ", receivedBytes=" + receivedBytes +
+                    ", sentMessages=" + sentMessages +
+                    ", receivedMessages=" + receivedMessages +
+                    ", ruleViolations=" + ruleViolations +
+                    ", roundTripTimes=" + roundTripTimes +
+                    ", getDataResponses=" + getDataResponses +
+                    ", getDataResponseBytes=" + getDataResponseBytes +
+                    ", getDataResponseTimes=" + getDataResponseTimes +
+                    '}';
+        }
+    }
+}
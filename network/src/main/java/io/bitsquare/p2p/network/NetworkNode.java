@@ -22,6 +22,7 @@ import java.net.Socket;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -46,6 +47,9 @@ public abstract class NetworkNode implements MessageListener {
     // accessed from different threads
     private final CopyOnWriteArraySet<OutboundConnection> outBoundConnections = new CopyOnWriteArraySet<>();
     protected final ObjectProperty<NodeAddress> nodeAddressProperty = new SimpleObjectProperty<>();
+    // Peers which answered our framed preamble with a java serialization stream header (older versions).
+    // We connect to them with WireFormat.JAVA_SERIALIZATION.
+    private final Set<NodeAddress> peersWithoutFramedFormat = ConcurrentHashMap.newKeySet();
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -109,35 +113,44 @@ public abstract class NetworkNode implements MessageListener {
                         } catch (Throwable throwable) {
                             log.error("Error at closing socket " + throwable);
                         }
-                        existingConnection.sendMessage(message);
                         return existingConnection;
                     } else {
-                        outboundConnection = new OutboundConnection(socket,
-                                NetworkNode.this,
-                                new ConnectionListener() {
-                                    @Override
-                                    public void onConnection(Connection connection) {
-                                        if (!connection.isStopped()) {
-                                            outBoundConnections.add((OutboundConnection) connection);
-                                            printOutBoundConnections();
-                                            connectionListeners.stream().forEach(e -> e.onConnection(connection));
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
-                                        log.trace("onDisconnect connectionListener\n\tconnection={}" + connection);
-                                        outBoundConnections.remove(connection);
-                                        printOutBoundConnections();
-                                        connectionListeners.stream().forEach(e -> e.onDisconnect(closeConnectionReason, connection));
-                                    }
-
-                                    @Override
-                                    public void onError(Throwable throwable) {
-                                        log.error("new OutboundConnection.ConnectionListener.onError " + throwable.getMessage());
-                                        connectionListeners.stream().forEach(e -> e.onError(throwable));
-                                    }
-                                }, peersNodeAddress);
+                        ConnectionListener connectionListener = new ConnectionListener() {
+                            @Override
+                            public void onConnection(Connection connection) {
+                                if (!connection.isStopped()) {
+                                    outBoundConnections.add((OutboundConnection) connection);
+                                    printOutBoundConnections();
+                                    connectionListeners.stream().forEach(e -> e.onConnection(connection));
+                                }
+                            }
+
+                            @Override
+                            public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
+                                log.trace("onDisconnect connectionListener\n\tconnection={}" + connection);
+                                outBoundConnections.remove(connection);
+                                printOutBoundConnections();
+                                connectionListeners.stream().forEach(e -> e.onDisconnect(closeConnectionReason, connection));
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                                log.error("new OutboundConnection.ConnectionListener.onError " + throwable.getMessage());
+                                connectionListeners.stream().forEach(e -> e.onError(throwable));
+                            }
+                        };
+                        WireFormat wireFormat = peersWithoutFramedFormat.contains(peersNodeAddress) ?
+                                WireFormat.JAVA_SERIALIZATION : getPreferredWireFormat();
+                        outboundConnection = createOutboundConnection(socket, connectionListener, peersNodeAddress,
+                                wireFormat);
+                        if (outboundConnection.isFramedFormatRejected()) {
+                            // The rejected connection is already stopped. We connect once more using the legacy format.
+                            log.info("Peer {} does not support the framed wire format. " +
+                                    "We connect again using java serialization.", peersNodeAddress.getFullAddress());
+                            peersWithoutFramedFormat.add(peersNodeAddress);
+                            outboundConnection = createOutboundConnection(createSocket(peersNodeAddress),
+                                    connectionListener, peersNodeAddress, WireFormat.JAVA_SERIALIZATION);
+                        }
 
                         log.info("\n\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n" +
                                 "NetworkNode created new outbound connection:"
@@ -147,8 +160,6 @@ public abstract class NetworkNode implements MessageListener {
                                 + "\nmessage=" + message
                                 + "\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n");
 
-                        // can take a while when using tor
-                        outboundConnection.sendMessage(message);
                         return outboundConnection;
                     }
                 } catch (Throwable throwable) {
@@ -163,7 +174,16 @@ public abstract class NetworkNode implements MessageListener {
 
             Futures.addCallback(future, new FutureCallback<Connection>() {
                 public void onSuccess(Connection connection) {
-                    UserThread.execute(() -> resultFuture.set(connection));
+                    // The result of the send call on the connection is completed on the UserThread already
+                    Futures.addCallback(connection.sendMessage(message), new FutureCallback<Connection>() {
+                        public void onSuccess(Connection connection) {
+                            resultFuture.set(connection);
+                        }
+
+                        public void onFailure(@NotNull Throwable throwable) {
+                            resultFuture.setException(throwable);
+                        }
+                    });
                 }
 
                 public void onFailure(@NotNull Throwable throwable) {
@@ -213,23 +233,8 @@ public abstract class NetworkNode implements MessageListener {
 
     public SettableFuture<Connection> sendMessage(Connection connection, Message message) {
         Log.traceCall("\n\tmessage=" + StringUtils.abbreviate(message.toString(), 100) + "\n\tconnection=" + connection);
-        // connection.sendMessage might take a bit (compression, write to stream), so we use a thread to not block
-        ListenableFuture<Connection> future = executorService.submit(() -> {
-            Thread.currentThread().setName("NetworkNode:SendMessage-to-" + connection.getUid());
-            connection.sendMessage(message);
-            return connection;
-        });
-        final SettableFuture<Connection> resultFuture = SettableFuture.create();
-        Futures.addCallback(future, new FutureCallback<Connection>() {
-            public void onSuccess(Connection connection) {
-                UserThread.execute(() -> resultFuture.set(connection));
-            }
-
-            public void onFailure(@NotNull Throwable throwable) {
-                UserThread.execute(() -> resultFuture.setException(throwable));
-            }
-        });
-        return resultFuture;
+        // The message gets queued at the connection and written by its writer, so we don't block here
+        return connection.sendMessage(message);
     }
 
     public ReadOnlyObjectProperty<NodeAddress> nodeAddressProperty() {
@@ -338,33 +343,47 @@ public abstract class NetworkNode implements MessageListener {
     }
 
     void startServer(ServerSocket serverSocket) {
-        server = new Server(serverSocket,
-                NetworkNode.this,
-                new ConnectionListener() {
-                    @Override
-                    public void onConnection(Connection connection) {
-                        if (!connection.isStopped()) {
-                            inBoundConnections.add((InboundConnection) connection);
-                            printInboundConnections();
-                            connectionListeners.stream().forEach(e -> e.onConnection(connection));
-                        }
-                    }
+        server = new Server(serverSocket, NetworkNode.this, createInboundConnectionListener());
+        executorService.submit(server);
+    }
 
-                    @Override
-                    public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
-                        log.trace("onDisconnect at server socket connectionListener\n\tconnection={}" + connection);
-                        inBoundConnections.remove(connection);
-                        printInboundConnections();
-                        connectionListeners.stream().forEach(e -> e.onDisconnect(closeConnectionReason, connection));
-                    }
+    ConnectionListener createInboundConnectionListener() {
+        return new ConnectionListener() {
+            @Override
+            public void onConnection(Connection connection) {
+                if (!connection.isStopped()) {
+                    inBoundConnections.add((InboundConnection) connection);
+                    printInboundConnections();
+                    connectionListeners.stream().forEach(e -> e.onConnection(connection));
+                }
+            }
 
-                    @Override
-                    public void onError(Throwable throwable) {
-                        log.error("server.ConnectionListener.onError " + throwable.getMessage());
-                        connectionListeners.stream().forEach(e -> e.onError(throwable));
-                    }
-                });
-        executorService.submit(server);
+            @Override
+            public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
+                log.trace("onDisconnect at server socket connectionListener\n\tconnection={}" + connection);
+                inBoundConnections.remove(connection);
+                printInboundConnections();
+                connectionListeners.stream().forEach(e -> e.onDisconnect(closeConnectionReason, connection));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                log.error("server.ConnectionListener.onError " + throwable.getMessage());
+                connectionListeners.stream().forEach(e -> e.onError(throwable));
+            }
+        };
+    }
+
+    // The format we request at new outbound connections. Peers not supporting it get connected with
+    // WireFormat.JAVA_SERIALIZATION.
+    WireFormat getPreferredWireFormat() {
+        return Connection.getPreferredWireFormat();
+    }
+
+    // Subclasses using another transport than the socket streams create their connection type here
+    OutboundConnection createOutboundConnection(Socket socket, ConnectionListener connectionListener,
+                                                NodeAddress peersNodeAddress, WireFormat wireFormat) {
+        return new OutboundConnection(socket, NetworkNode.this, connectionListener, peersNodeAddress, wireFormat);
     }
 
     private Optional<OutboundConnection> lookupOutBoundConnection(NodeAddress peersNodeAddress) {
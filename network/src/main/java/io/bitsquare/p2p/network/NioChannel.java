@@ -0,0 +1,258 @@
+package io.bitsquare.p2p.network;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non blocking transport of a Connection used by the NioNetworkNode. Only WireFormat.FRAMED is supported.
+ * <p>
+ * Reading and writing happens in the thread of the SelectorLoop. The read buffer starts small and grows only for
+ * the frame currently being received, so idle connections don't hold MAX_MSG_SIZE sized buffers.
+ * Outgoing frames are queued and written when the socket is writable. The queue is bounded by hasCapacity: the
+ * Connection stops handing over frames while it is full, so a slow peer fills up the outbound queue of the
+ * Connection and the sender gets a SendQueueFullException.
+ */
+class NioChannel implements SelectorLoop.Handler {
+    private static final Logger log = LoggerFactory.getLogger(NioChannel.class);
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 4 * 1024;
+    // Max. bytes waiting for being written. A single frame might exceed it.
+    private static final int MAX_QUEUED_BYTES = Connection.getMaxMsgSize();
+
+    interface FrameHandler {
+        void onFrame(byte[] frame);
+
+        // Returns true if we should skip the frame and continue reading
+        boolean onFrameSizeExceeded(int frameLength);
+
+        void onChannelException(Throwable throwable);
+    }
+
+    private final SocketChannel socketChannel;
+    private final SelectorLoop selectorLoop;
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+
+    // Only accessed from the selector thread after start
+    private FrameHandler frameHandler;
+    private SelectionKey selectionKey;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private int bytesToSkip;
+    private volatile boolean stopped;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // The Connection has exchanged the preamble of the framed format before, while the channel was in blocking mode
+    NioChannel(SocketChannel socketChannel, SelectorLoop selectorLoop) {
+        this.socketChannel = socketChannel;
+        this.selectorLoop = selectorLoop;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void start(FrameHandler frameHandler) throws IOException {
+        this.frameHandler = frameHandler;
+        socketChannel.configureBlocking(false);
+
+        selectorLoop.register(socketChannel, SelectionKey.OP_READ, this, key -> {
+            selectionKey = key;
+            updateInterestOps();
+        });
+    }
+
+    /**
+     * Queues the frame for sending. Can be called from any thread.
+     *
+     * @return Future which completes in the selector thread when the frame was written to the socket
+     */
+    ListenableFuture<Void> send(byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.allocate(FramedMessageCodec.LENGTH_HEADER_SIZE + frame.length);
+        buffer.putInt(frame.length);
+        buffer.put(frame);
+        buffer.flip();
+        SettableFuture<Void> future = SettableFuture.create();
+        enqueue(buffer, future);
+        selectorLoop.execute(this::updateInterestOps);
+        return future;
+    }
+
+    // Can be called from any thread
+    boolean hasCapacity() {
+        return queuedBytes.get() < MAX_QUEUED_BYTES;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    // Called after the socket got closed. The frames not written yet will not be sent anymore.
+    void close() {
+        selectorLoop.execute(() -> failPendingWrites(new ClosedChannelException()));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // SelectorLoop.Handler implementation
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void onReadable() throws IOException {
+        if (stopped) {
+            // The connection is shutting down and will close the channel. We might still need to write the 
+            // CloseConnectionMessage, so we keep the key and discard what we receive.
+            readBuffer.clear();
+            if (socketChannel.read(readBuffer) < 0)
+                selectionKey.cancel();
+            readBuffer.clear();
+            return;
+        }
+
+        int read = socketChannel.read(readBuffer);
+        if (read < 0)
+            throw new EOFException("Channel closed by peer.");
+
+        readBuffer.flip();
+        int requiredCapacity = processReadBuffer();
+        readBuffer.compact();
+
+        if (requiredCapacity > readBuffer.capacity()) {
+            // We grow the buffer only for the frame which does not fit
+            ByteBuffer newBuffer = ByteBuffer.allocate(requiredCapacity);
+            readBuffer.flip();
+            newBuffer.put(readBuffer);
+            readBuffer = newBuffer;
+        } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+            // Buffer is empty, so we give back the memory of a large frame
+            readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        }
+    }
+
+    @Override
+    public void onWritable() throws IOException {
+        PendingWrite pendingWrite;
+        while ((pendingWrite = writeQueue.peek()) != null) {
+            socketChannel.write(pendingWrite.buffer);
+            if (pendingWrite.buffer.hasRemaining())
+                // Socket send buffer is full, we continue when we get writable again
+                return;
+
+            writeQueue.poll();
+            queuedBytes.addAndGet(-pendingWrite.buffer.capacity());
+            pendingWrite.future.set(null);
+        }
+        updateInterestOps();
+    }
+
+    @Override
+    public void onException(Throwable throwable) {
+        failPendingWrites(throwable);
+        if (!stopped) {
+            stopped = true;
+            frameHandler.onChannelException(throwable);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Called in the selector thread with the readBuffer in read mode.
+    // Returns the capacity we need for the next frame or 0.
+    private int processReadBuffer() throws IOException {
+        while (!stopped) {
+            if (bytesToSkip > 0) {
+                int skip = Math.min(bytesToSkip, readBuffer.remaining());
+                readBuffer.position(readBuffer.position() + skip);
+                bytesToSkip -= skip;
+                if (bytesToSkip > 0)
+                    return 0;
+            }
+
+            if (readBuffer.remaining() < FramedMessageCodec.LENGTH_HEADER_SIZE)
+                return 0;
+
+            int frameLength = readBuffer.getInt(readBuffer.position());
+            if (frameLength <= 0)
+                throw new StreamCorruptedException("Invalid frame length. frameLength=" + frameLength);
+
+            // We check the size before we buffer the payload
+            if (frameLength > Connection.getMaxMsgSize()) {
+                log.warn("Received frame exceeds max. message size. frameLength=" + frameLength);
+                readBuffer.getInt();
+                if (!frameHandler.onFrameSizeExceeded(frameLength)) {
+                    stopped = true;
+                    return 0;
+                }
+                bytesToSkip = frameLength;
+                continue;
+            }
+
+            if (readBuffer.remaining() < FramedMessageCodec.LENGTH_HEADER_SIZE + frameLength)
+                return FramedMessageCodec.LENGTH_HEADER_SIZE + frameLength;
+
+            readBuffer.getInt();
+            byte[] frame = new byte[frameLength];
+            readBuffer.get(frame);
+            frameHandler.onFrame(frame);
+        }
+        return 0;
+    }
+
+    private void enqueue(ByteBuffer buffer, SettableFuture<Void> future) {
+        queuedBytes.addAndGet(buffer.capacity());
+        writeQueue.add(new PendingWrite(buffer, future));
+    }
+
+    // Called in the selector thread
+    private void failPendingWrites(Throwable throwable) {
+        PendingWrite pendingWrite;
+        while ((pendingWrite = writeQueue.poll()) != null) {
+            queuedBytes.addAndGet(-pendingWrite.buffer.capacity());
+            pendingWrite.future.setException(throwable);
+        }
+    }
+
+    // Called in the selector thread
+    private void updateInterestOps() {
+        if (selectionKey != null && selectionKey.isValid()) {
+            int interestOps = writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if (selectionKey.interestOps() != interestOps)
+                selectionKey.interestOps(interestOps);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // PendingWrite
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class PendingWrite {
+        final ByteBuffer buffer;
+        final SettableFuture<Void> future;
+
+        PendingWrite(ByteBuffer buffer, SettableFuture<Void> future) {
+            this.buffer = buffer;
+            this.future = future;
+        }
+    }
+}
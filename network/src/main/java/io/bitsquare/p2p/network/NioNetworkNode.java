@@ -0,0 +1,198 @@
+package io.bitsquare.p2p.network;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.bitsquare.app.Log;
+import io.bitsquare.common.UserThread;
+import io.bitsquare.p2p.NodeAddress;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * NetworkNode using non blocking sockets. Instead of a reader thread per connection a small fixed set of
+ * SelectorLoops serves all connections, so a node can handle several hundred peers.
+ * <p>
+ * Uses the same socket model as the LocalhostNetworkNode (plain TCP on localhost, no tor). The non blocking transport
+ * supports only WireFormat.FRAMED. Connections with peers not supporting the framed format fall back to a stream
+ * based connection, which uses a thread like at the other NetworkNodes.
+ * Port 0 can be used for binding to a free port, the node address contains the port we got.
+ */
+// Run in UserThread
+public class NioNetworkNode extends NetworkNode {
+    private static final Logger log = LoggerFactory.getLogger(NioNetworkNode.class);
+
+    private static volatile int numSelectorLoops = 2;
+
+    public static void setNumSelectorLoops(int numSelectorLoops) {
+        NioNetworkNode.numSelectorLoops = numSelectorLoops;
+    }
+
+    private final List<SelectorLoop> selectorLoops = new ArrayList<>();
+    private final AtomicInteger selectorLoopIndex = new AtomicInteger();
+    private ServerSocketChannel serverSocketChannel;
+    // The connections read the preamble of the peer in blocking mode, so we don't create them in the selector thread.
+    // The handshake takes only one round trip, so the threads are busy only for a short time.
+    private final ExecutorService handshakeExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("NioNetworkNode.Handshake-%d")
+            .setDaemon(true)
+            .build());
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public NioNetworkNode(int port) {
+        super(port);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void start(@Nullable SetupListener setupListener) {
+        if (setupListener != null)
+            addSetupListener(setupListener);
+
+        // Still used for creating the outbound sockets
+        createExecutorService();
+
+        try {
+            for (int i = 0; i < numSelectorLoops; i++) {
+                SelectorLoop selectorLoop = new SelectorLoop("SelectorLoop-" + servicePort + "-" + i);
+                selectorLoops.add(selectorLoop);
+                selectorLoop.start();
+            }
+            setupListeners.stream().forEach(SetupListener::onTorNodeReady);
+
+            startServerSocketChannel();
+
+            nodeAddressProperty.set(new NodeAddress("localhost", serverSocketChannel.socket().getLocalPort()));
+            setupListeners.stream().forEach(SetupListener::onHiddenServicePublished);
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("Exception at startServerSocketChannel: " + e.getMessage());
+            setupListeners.stream().forEach(s -> s.onSetupFailed(e));
+        }
+    }
+
+    // Called from NetworkNode thread. We connect in blocking mode, the connection switches to non blocking.
+    @Override
+    protected Socket createSocket(NodeAddress peerNodeAddress) throws IOException {
+        return SocketChannel.open(new InetSocketAddress(peerNodeAddress.hostName, peerNodeAddress.port)).socket();
+    }
+
+    @Override
+    WireFormat getPreferredWireFormat() {
+        return WireFormat.FRAMED;
+    }
+
+    // Peers not supporting the framed format get a stream based connection on the still blocking channel
+    @Override
+    OutboundConnection createOutboundConnection(Socket socket, ConnectionListener connectionListener,
+                                                NodeAddress peersNodeAddress, WireFormat wireFormat) {
+        if (wireFormat != WireFormat.FRAMED)
+            return super.createOutboundConnection(socket, connectionListener, peersNodeAddress, wireFormat);
+
+        checkNotNull(socket.getChannel(), "socket must be created from a SocketChannel");
+        return new OutboundConnection(socket.getChannel(), nextSelectorLoop(), this, connectionListener, peersNodeAddress);
+    }
+
+    @Override
+    public void shutDown(Runnable shutDownCompleteHandler) {
+        Log.traceCall();
+        try {
+            if (serverSocketChannel != null)
+                serverSocketChannel.close();
+        } catch (IOException e) {
+            log.error("Exception at closing serverSocketChannel. " + e.getMessage());
+        }
+        handshakeExecutor.shutdownNow();
+
+        super.shutDown(() -> {
+            // We give the connections a bit of time for sending the CloseConnectionMessage
+            UserThread.runAfter(() -> {
+                selectorLoops.stream().forEach(SelectorLoop::shutDown);
+                MoreExecutors.shutdownAndAwaitTermination(executorService, 500, TimeUnit.MILLISECONDS);
+                log.info("NioNetworkNode shutdown completed");
+                if (shutDownCompleteHandler != null)
+                    shutDownCompleteHandler.run();
+            }, 500, TimeUnit.MILLISECONDS);
+        });
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void startServerSocketChannel() throws IOException {
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.configureBlocking(false);
+        serverSocketChannel.bind(new InetSocketAddress(servicePort));
+
+        ConnectionListener inboundConnectionListener = createInboundConnectionListener();
+        selectorLoops.get(0).register(serverSocketChannel, SelectionKey.OP_ACCEPT, new SelectorLoop.Handler() {
+            @Override
+            public void onAcceptable() throws IOException {
+                SocketChannel socketChannel;
+                while ((socketChannel = serverSocketChannel.accept()) != null) {
+                    SocketChannel acceptedSocketChannel = socketChannel;
+                    handshakeExecutor.execute(() -> createInboundConnection(acceptedSocketChannel,
+                            inboundConnectionListener));
+                }
+            }
+
+            @Override
+            public void onReadable() {
+            }
+
+            @Override
+            public void onWritable() {
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                log.error("Exception at serverSocketChannel. " + throwable.getMessage());
+                throwable.printStackTrace();
+            }
+        }, key -> log.info("Ready to accept new clients on port " + serverSocketChannel.socket().getLocalPort()));
+    }
+
+    // Called in a thread of the handshakeExecutor. The accepted channel is still in blocking mode.
+    private void createInboundConnection(SocketChannel socketChannel, ConnectionListener inboundConnectionListener) {
+        Socket socket = socketChannel.socket();
+        log.info("Accepted new client on localPort/port " + socket.getLocalPort() + "/" + socket.getPort());
+        InboundConnection connection = new InboundConnection(socketChannel, nextSelectorLoop(),
+                NioNetworkNode.this, inboundConnectionListener);
+        log.info("\n\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n" +
+                "NioNetworkNode created new inbound connection:"
+                + "\nlocalPort/port=" + socket.getLocalPort()
+                + "/" + socket.getPort()
+                + "\nconnection.uid=" + connection.getUid()
+                + "\nwireFormat=" + connection.getWireFormat()
+                + "\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n");
+    }
+
+    private SelectorLoop nextSelectorLoop() {
+        return selectorLoops.get(Math.abs(selectorLoopIndex.getAndIncrement() % selectorLoops.size()));
+    }
+}
@@ -3,9 +3,20 @@ package io.bitsquare.p2p.network;
 import io.bitsquare.p2p.NodeAddress;
 
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 public class OutboundConnection extends Connection {
     public OutboundConnection(Socket socket, MessageListener messageListener, ConnectionListener connectionListener, NodeAddress peersNodeAddress) {
         super(socket, messageListener, connectionListener, peersNodeAddress);
     }
+
+    OutboundConnection(Socket socket, MessageListener messageListener, ConnectionListener connectionListener,
+                       NodeAddress peersNodeAddress, WireFormat wireFormat) {
+        super(socket, messageListener, connectionListener, peersNodeAddress, wireFormat);
+    }
+
+    OutboundConnection(SocketChannel socketChannel, SelectorLoop selectorLoop, MessageListener messageListener,
+                       ConnectionListener connectionListener, NodeAddress peersNodeAddress) {
+        super(socketChannel, selectorLoop, messageListener, connectionListener, peersNodeAddress);
+    }
 }
@@ -0,0 +1,12 @@
+package io.bitsquare.p2p.network;
+
+/**
+ * Limits the inbound message rate of a connection. Each connection gets its own instance from the factory set at
+ * Connection.setRateLimiterFactory. It is called only from the thread reading from that connection.
+ */
+public interface RateLimiter {
+    /**
+     * @return false if the received message exceeds the limits for the peer type of the connection
+     */
+    boolean tryAcquire(Connection.PeerType peerType, int messageSize);
+}
@@ -0,0 +1,134 @@
+package io.bitsquare.p2p.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Runs one selector in its own thread and dispatches the ready events to the Handler attached to the selection key.
+ * All changes to the registrations and interest sets are done in the loop thread (see execute), so the handlers
+ * don't need any synchronisation for their selector related state.
+ */
+class SelectorLoop implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(SelectorLoop.class);
+
+    interface Handler {
+        default void onAcceptable() throws IOException {
+        }
+
+        void onReadable() throws IOException;
+
+        void onWritable() throws IOException;
+
+        void onException(Throwable throwable);
+    }
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean stopped;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    SelectorLoop(String name) throws IOException {
+        this.name = name;
+        selector = Selector.open();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void start() {
+        Thread thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Can be called from any thread
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    // Can be called from any thread. The selection key is passed to the resultHandler in the loop thread.
+    void register(SelectableChannel channel, int interestOps, Handler handler, Consumer<SelectionKey> resultHandler) {
+        execute(() -> {
+            try {
+                resultHandler.accept(channel.register(selector, interestOps, handler));
+            } catch (ClosedChannelException e) {
+                handler.onException(e);
+            }
+        });
+    }
+
+    void shutDown() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Runnable
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                selector.select();
+
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        log.error("Executing task failed. " + t.getMessage());
+                        t.printStackTrace();
+                    }
+                }
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        if (key.isValid() && key.isAcceptable())
+                            handler.onAcceptable();
+                        if (key.isValid() && key.isReadable())
+                            handler.onReadable();
+                        if (key.isValid() && key.isWritable())
+                            handler.onWritable();
+                    } catch (Throwable t) {
+                        key.cancel();
+                        handler.onException(t);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            log.error("SelectorLoop " + name + " failed. " + t.getMessage());
+            t.printStackTrace();
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.error("Exception at closing selector. " + e.getMessage());
+            }
+            log.debug("SelectorLoop {} stopped", name);
+        }
+    }
+}
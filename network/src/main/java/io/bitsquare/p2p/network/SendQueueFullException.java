@@ -0,0 +1,13 @@
+package io.bitsquare.p2p.network;
+
+/**
+ * Reported at the future returned by sendMessage if the peer does not read our messages fast enough and the
+ * outbound queue of the connection is full.
+ */
+public class SendQueueFullException extends RuntimeException {
+
+    public SendQueueFullException(Connection connection, int queueSize) {
+        super("Outbound queue of connection is full. queueSize=" + queueSize + " connection=" + connection);
+    }
+
+}
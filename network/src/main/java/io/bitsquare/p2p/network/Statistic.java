@@ -1,55 +1,34 @@
 package io.bitsquare.p2p.network;
 
-import io.bitsquare.common.UserThread;
 import io.bitsquare.p2p.Message;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counters of one connection. Updated from the connection threads without locking, the totals over all connections
+ * are counted in NetworkMetrics. The getters can be called from any thread, so the GUI polls them.
+ */
 public class Statistic {
     private static final Logger log = LoggerFactory.getLogger(Statistic.class);
 
 
-    ///////////////////////////////////////////////////////////////////////////////////////////
-    // Static
-    ///////////////////////////////////////////////////////////////////////////////////////////
-
-    private final static IntegerProperty totalSentBytes = new SimpleIntegerProperty(0);
-    private final static IntegerProperty totalReceivedBytes = new SimpleIntegerProperty(0);
-
-    public static int getTotalSentBytes() {
-        return totalSentBytes.get();
-    }
-
-    public static IntegerProperty totalSentBytesProperty() {
-        return totalSentBytes;
-    }
-
-    public static int getTotalReceivedBytes() {
-        return totalReceivedBytes.get();
-    }
-
-    public static IntegerProperty totalReceivedBytesProperty() {
-        return totalReceivedBytes;
-    }
-
-
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Instance fields
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private final Date creationDate;
-    private long lastActivityTimestamp = System.currentTimeMillis();
-    private final IntegerProperty sentBytes = new SimpleIntegerProperty(0);
-    private final IntegerProperty receivedBytes = new SimpleIntegerProperty(0);
-    private final Map<String, Integer> receivedMessages = new ConcurrentHashMap<>();
-    private final Map<String, Integer> sentMessages = new ConcurrentHashMap<>();
-    private final IntegerProperty roundTripTime = new SimpleIntegerProperty(0);
+    private volatile long lastActivityTimestamp = System.currentTimeMillis();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final Map<String, LongAdder> receivedMessages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> sentMessages = new ConcurrentHashMap<>();
+    private final Map<RuleViolation, LongAdder> ruleViolations = new ConcurrentHashMap<>();
+    private volatile int roundTripTime;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -65,44 +44,43 @@ public class Statistic {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public void updateLastActivityTimestamp() {
-        UserThread.execute(() -> lastActivityTimestamp = System.currentTimeMillis());
+        lastActivityTimestamp = System.currentTimeMillis();
     }
 
     public void addSentBytes(int value) {
-        UserThread.execute(() -> {
-            sentBytes.set(sentBytes.get() + value);
-            totalSentBytes.set(totalSentBytes.get() + value);
-        });
+        sentBytes.add(value);
+        NetworkMetrics.addSentBytes(value);
     }
 
     public void addReceivedBytes(int value) {
-        UserThread.execute(() -> {
-            receivedBytes.set(receivedBytes.get() + value);
-            totalReceivedBytes.set(totalReceivedBytes.get() + value);
-        });
+        receivedBytes.add(value);
+        NetworkMetrics.addReceivedBytes(value);
     }
 
-    // TODO would need msg inspection to get useful information...
     public void addReceivedMessage(Message message) {
-        String messageClassName = message.getClass().getSimpleName();
-        int counter = 1;
-        if (receivedMessages.containsKey(messageClassName))
-            counter = receivedMessages.get(messageClassName) + 1;
-
-        receivedMessages.put(messageClassName, counter);
+        NetworkMetrics.increment(receivedMessages, message);
+        NetworkMetrics.addReceivedMessage(message);
     }
 
     public void addSentMessage(Message message) {
-        String messageClassName = message.getClass().getSimpleName();
-        int counter = 1;
-        if (sentMessages.containsKey(messageClassName))
-            counter = sentMessages.get(messageClassName) + 1;
+        NetworkMetrics.increment(sentMessages, message);
+        NetworkMetrics.addSentMessage(message);
+    }
 
-        sentMessages.put(messageClassName, counter);
+    public void addRuleViolation(RuleViolation ruleViolation) {
+        ruleViolations.computeIfAbsent(ruleViolation, key -> new LongAdder()).increment();
+        NetworkMetrics.addRuleViolation(ruleViolation);
     }
 
+    // Used for the round trip time reported by the peer
     public void setRoundTripTime(int roundTripTime) {
-        this.roundTripTime.set(roundTripTime);
+        this.roundTripTime = roundTripTime;
+    }
+
+    // Used for the round trip time we have measured, only that one is counted in the NetworkMetrics
+    public void addMeasuredRoundTripTime(int roundTripTime) {
+        this.roundTripTime = roundTripTime;
+        NetworkMetrics.addRoundTripTime(roundTripTime);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -117,27 +95,33 @@ public class Statistic {
         return System.currentTimeMillis() - lastActivityTimestamp;
     }
 
-    public int getSentBytes() {
-        return sentBytes.get();
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
     }
 
-    public IntegerProperty sentBytesProperty() {
-        return sentBytes;
+    // Snapshot by simple class name of the message
+    public Map<String, Long> getSentMessages() {
+        return NetworkMetrics.getSums(sentMessages);
     }
 
-    public int getReceivedBytes() {
-        return receivedBytes.get();
+    public Map<String, Long> getReceivedMessages() {
+        return NetworkMetrics.getSums(receivedMessages);
     }
 
-    public IntegerProperty receivedBytesProperty() {
-        return receivedBytes;
+    public long getNumRuleViolations(RuleViolation ruleViolation) {
+        LongAdder counter = ruleViolations.get(ruleViolation);
+        return counter != null ? counter.sum() : 0;
     }
 
     public Date getCreationDate() {
         return creationDate;
     }
 
-    public IntegerProperty roundTripTimeProperty() {
+    public int getRoundTripTime() {
         return roundTripTime;
     }
 
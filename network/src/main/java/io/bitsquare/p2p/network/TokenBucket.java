@@ -0,0 +1,52 @@
+package io.bitsquare.p2p.network;
+
+/**
+ * Token bucket holding up to capacity tokens, refilled continuously at tokensPerSec.
+ * Does not allocate on use and is not thread safe, a bucket is only used by the thread reading from one connection.
+ */
+final class TokenBucket {
+    private static final double NANOS_PER_SEC = 1_000_000_000d;
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    TokenBucket(long capacity, long tokensPerSec, long nowNanos) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSec / NANOS_PER_SEC;
+        tokens = capacity;
+        lastRefillNanos = nowNanos;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+
+    boolean hasTokens(long amount) {
+        return tokens >= amount;
+    }
+
+    void consume(long amount) {
+        tokens -= amount;
+    }
+
+    double getTokens() {
+        return tokens;
+    }
+}
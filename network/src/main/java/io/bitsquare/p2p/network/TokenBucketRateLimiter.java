@@ -0,0 +1,120 @@
+package io.bitsquare.p2p.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Default RateLimiter. Uses one token bucket for the number of messages and one for the number of bytes per peer type.
+ * The buckets are full at start and allow a burst of their capacity, afterwards only the refill rate.
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketRateLimiter.class);
+
+    public static class Limits {
+        public final int messagesPerSec;
+        public final int maxMessageBurst;
+        public final int bytesPerSec;
+        public final int maxBytesBurst;
+
+        public Limits(int messagesPerSec, int maxMessageBurst, int bytesPerSec, int maxBytesBurst) {
+            this.messagesPerSec = messagesPerSec;
+            this.maxMessageBurst = maxMessageBurst;
+            this.bytesPerSec = bytesPerSec;
+            this.maxBytesBurst = maxBytesBurst;
+        }
+
+        @Override
+        public String toString() {
+            return "Limits{" +
+                    "messagesPerSec=" + messagesPerSec +
+                    ", maxMessageBurst=" + maxMessageBurst +
+                    ", bytesPerSec=" + bytesPerSec +
+                    ", maxBytesBurst=" + maxBytesBurst +
+                    '}';
+        }
+    }
+
+    //TODO decrease limits again after testing
+    // 50 msg per sec. With MAX_MSG_SIZE of 100kb results in bandwidth of 5 MB/sec
+    private static final Limits DEFAULT_LIMITS = new Limits(50, 50,
+            50 * Connection.getMaxMsgSize(), 50 * Connection.getMaxMsgSize());
+
+    private static final Map<Connection.PeerType, Limits> limitsByPeerType = new EnumMap<>(Connection.PeerType.class);
+
+    static {
+        for (Connection.PeerType peerType : Connection.PeerType.values())
+            limitsByPeerType.put(peerType, DEFAULT_LIMITS);
+    }
+
+    // Applies only to connections created after that call
+    public static synchronized void setLimits(Connection.PeerType peerType, Limits limits) {
+        limitsByPeerType.put(peerType, limits);
+    }
+
+    public static synchronized Limits getLimits(Connection.PeerType peerType) {
+        return limitsByPeerType.get(peerType);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Class fields
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Indexed by PeerType.ordinal(), so the lookup does not allocate
+    private final Limits[] limits;
+    private final TokenBucket[] messageBuckets;
+    private final TokenBucket[] byteBuckets;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public TokenBucketRateLimiter() {
+        this(System.nanoTime());
+    }
+
+    TokenBucketRateLimiter(long nowNanos) {
+        Connection.PeerType[] peerTypes = Connection.PeerType.values();
+        limits = new Limits[peerTypes.length];
+        messageBuckets = new TokenBucket[peerTypes.length];
+        byteBuckets = new TokenBucket[peerTypes.length];
+        for (Connection.PeerType peerType : peerTypes) {
+            Limits limits = getLimits(peerType);
+            int index = peerType.ordinal();
+            this.limits[index] = limits;
+            messageBuckets[index] = new TokenBucket(limits.maxMessageBurst, limits.messagesPerSec, nowNanos);
+            byteBuckets[index] = new TokenBucket(limits.maxBytesBurst, limits.bytesPerSec, nowNanos);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // RateLimiter implementation
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean tryAcquire(Connection.PeerType peerType, int messageSize) {
+        return tryAcquire(peerType, messageSize, System.nanoTime());
+    }
+
+    boolean tryAcquire(Connection.PeerType peerType, int messageSize, long nowNanos) {
+        int index = peerType.ordinal();
+        TokenBucket messageBucket = messageBuckets[index];
+        TokenBucket byteBucket = byteBuckets[index];
+        messageBucket.refill(nowNanos);
+        byteBucket.refill(nowNanos);
+        if (messageBucket.hasTokens(1) && byteBucket.hasTokens(messageSize)) {
+            messageBucket.consume(1);
+            byteBucket.consume(messageSize);
+            return true;
+        } else {
+            log.warn("Throttle limit exceeded. peerType={}, messageSize={}, availableMessages={}, availableBytes={}, limits={}",
+                    peerType, messageSize, (int) messageBucket.getTokens(), (long) byteBucket.getTokens(), limits[index]);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.bitsquare.p2p.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+
+/**
+ * The encoding used on the socket of a connection.
+ * <p>
+ * JAVA_SERIALIZATION writes the messages with one long living ObjectOutputStream (the legacy format).
+ * FRAMED writes each message as a frame: a 4 byte length header followed by a 1 byte message type id and the payload
+ * (see FramedMessageCodec). The length header lets us check the max. message size before we read the payload.
+ * <p>
+ * The format is negotiated per connection: The outbound side writes the preamble of its preferred format, the
+ * inbound side detects the format by peeking at the first bytes and mirrors it. A java serialization stream starts
+ * with the magic bytes 0xACED, so the FRAMED preamble must never start with 0xAC.
+ */
+public enum WireFormat {
+    JAVA_SERIALIZATION,
+    FRAMED;
+
+    static final int PREAMBLE_LENGTH = 4;
+    // "BSQ" + format version
+    private static final byte[] FRAMED_PREAMBLE = new byte[]{0x42, 0x53, 0x51, 0x01};
+
+    static byte[] getFramedPreamble() {
+        return FRAMED_PREAMBLE.clone();
+    }
+
+    static boolean isFramedPreamble(byte[] preamble) {
+        return Arrays.equals(FRAMED_PREAMBLE, preamble);
+    }
+
+    /**
+     * Reads the first bytes sent by the peer and pushes them back if they are not the FRAMED preamble, so the
+     * ObjectInputStream can read the java serialization stream header.
+     * Blocks until the peer has sent the first bytes.
+     */
+    static WireFormat detect(PushbackInputStream inputStream) throws IOException {
+        byte[] preamble = readPreamble(inputStream);
+        if (isFramedPreamble(preamble)) {
+            return FRAMED;
+        } else {
+            inputStream.unread(preamble);
+            return JAVA_SERIALIZATION;
+        }
+    }
+
+    static byte[] readPreamble(PushbackInputStream inputStream) throws IOException {
+        byte[] preamble = new byte[PREAMBLE_LENGTH];
+        int read = 0;
+        while (read < PREAMBLE_LENGTH) {
+            int count = inputStream.read(preamble, read, PREAMBLE_LENGTH - read);
+            if (count < 0)
+                throw new EOFException("Stream closed before we received the preamble.");
+            read += count;
+        }
+        return preamble;
+    }
+}
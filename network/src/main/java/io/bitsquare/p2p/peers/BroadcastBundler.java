@@ -0,0 +1,181 @@
+package io.bitsquare.p2p.peers;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import io.bitsquare.common.Timer;
+import io.bitsquare.common.UserThread;
+import io.bitsquare.p2p.Message;
+import io.bitsquare.p2p.network.Connection;
+import io.bitsquare.p2p.network.NetworkNode;
+import io.bitsquare.p2p.storage.messages.*;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the broadcast messages for a peer which get sent within a short time and sends them in one
+ * BroadcastBundleMessage. At bursts (e.g. republishing all our offers) the peer gets one message instead of one per
+ * broadcast and we need only one timer per peer.
+ * <p>
+ * The first message for a peer defines when the bundle is sent, messages added later are sent with it.
+ */
+// Run in UserThread
+class BroadcastBundler {
+    private static final Logger log = LoggerFactory.getLogger(BroadcastBundler.class);
+
+    // A bundle uses max. half of the max. message size
+    private static final int MAX_BUNDLE_SIZE = Connection.getMaxMsgSize() / 2;
+
+    // Rough serialized sizes of the parts of a message we don't look at for the estimation (class descriptors, pub key,
+    // signature, hashes). We rather overestimate as the bundle must not exceed the max. message size.
+    private static final int MESSAGE_OVERHEAD = 2 * 1024;
+    private static final int HASH_SIZE = 40;
+
+    // Disabled by default as older peers cannot deserialize a BroadcastBundleMessage (see Broadcaster)
+    private static boolean bundlingEnabled = false;
+
+    static void setBundlingEnabled(boolean bundlingEnabled) {
+        BroadcastBundler.bundlingEnabled = bundlingEnabled;
+    }
+
+    private final NetworkNode networkNode;
+    private final Map<Connection, Bundle> bundleByConnection = new HashMap<>();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    BroadcastBundler(NetworkNode networkNode) {
+        this.networkNode = networkNode;
+    }
+
+    void shutDown() {
+        bundleByConnection.values().stream().forEach(bundle -> {
+            bundle.timer.stop();
+            bundle.futures.stream().forEach(future -> future.setException(new SocketException("Broadcaster shut down.")));
+        });
+        bundleByConnection.clear();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param messageSize Estimated serialized size of the message
+     * @param delayMs     Delay until the bundle is sent if the message starts a new bundle
+     * @return Future which completes when the bundle containing the message was sent
+     */
+    SettableFuture<Connection> send(Connection connection, BroadcastMessage message, int messageSize, long delayMs) {
+        if (!bundlingEnabled) {
+            SettableFuture<Connection> future = SettableFuture.create();
+            UserThread.runAfter(() -> Futures.addCallback(networkNode.sendMessage(connection, message),
+                    getForwardingCallback(future)), delayMs, TimeUnit.MILLISECONDS);
+            return future;
+        }
+
+        Bundle bundle = bundleByConnection.get(connection);
+        if (bundle != null && bundle.size + messageSize > MAX_BUNDLE_SIZE) {
+            // No space left, we send the current bundle now and start a new one
+            sendBundle(connection);
+            bundle = null;
+        }
+
+        if (bundle == null) {
+            bundle = new Bundle(UserThread.runAfter(() -> sendBundle(connection), delayMs, TimeUnit.MILLISECONDS));
+            bundleByConnection.put(connection, bundle);
+        }
+
+        SettableFuture<Connection> future = SettableFuture.create();
+        bundle.messages.add(message);
+        bundle.futures.add(future);
+        bundle.size += messageSize;
+        return future;
+    }
+
+    int getNumPendingMessages() {
+        return bundleByConnection.values().stream().mapToInt(bundle -> bundle.messages.size()).sum();
+    }
+
+    // We don't serialize the message for getting the size as that would be done for each broadcast at the UserThread.
+    // The size of the storage payload is known from calculating its hash already. Unknown message types get sent in a
+    // bundle of their own.
+    static int getEstimatedSize(BroadcastMessage message) {
+        if (message instanceof AddDataMessage)
+            return ((AddDataMessage) message).protectedStorageEntry.getEstimatedSize();
+        else if (message instanceof RemoveDataMessage)
+            return ((RemoveDataMessage) message).protectedStorageEntry.getEstimatedSize();
+        else if (message instanceof RemoveMailboxDataMessage)
+            return ((RemoveMailboxDataMessage) message).protectedMailboxStorageEntry.getEstimatedSize();
+        else if (message instanceof RefreshTTLMessage)
+            return MESSAGE_OVERHEAD;
+        else if (message instanceof RefreshTTLBundleMessage)
+            return MESSAGE_OVERHEAD + HASH_SIZE * ((RefreshTTLBundleMessage) message).hashesOfPayload.size();
+        else
+            return MAX_BUNDLE_SIZE;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void sendBundle(Connection connection) {
+        Bundle bundle = bundleByConnection.remove(connection);
+        if (bundle == null)
+            return;
+
+        bundle.timer.stop();
+        Message message;
+        if (bundle.messages.size() == 1) {
+            message = bundle.messages.get(0);
+        } else {
+            log.trace("We send {} broadcast messages in one bundle to {}.",
+                    bundle.messages.size(), connection.getPeersNodeAddressOptional());
+            message = new BroadcastBundleMessage(bundle.messages);
+        }
+
+        SettableFuture<Connection> future = networkNode.sendMessage(connection, message);
+        bundle.futures.stream().forEach(bundleFuture -> Futures.addCallback(future, getForwardingCallback(bundleFuture)));
+    }
+
+    private FutureCallback<Connection> getForwardingCallback(SettableFuture<Connection> future) {
+        return new FutureCallback<Connection>() {
+            @Override
+            public void onSuccess(Connection connection) {
+                future.set(connection);
+            }
+
+            @Override
+            public void onFailure(@NotNull Throwable throwable) {
+                future.setException(throwable);
+            }
+        };
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Bundle
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class Bundle {
+        final Timer timer;
+        final ArrayList<BroadcastMessage> messages = new ArrayList<>();
+        final List<SettableFuture<Connection>> futures = new ArrayList<>();
+        int size;
+
+        Bundle(Timer timer) {
+            this.timer = timer;
+        }
+    }
+}
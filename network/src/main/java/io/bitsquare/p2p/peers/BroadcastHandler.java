@@ -18,7 +18,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class BroadcastHandler implements PeerManager.Listener {
@@ -57,6 +56,7 @@ public class BroadcastHandler implements PeerManager.Listener {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private final NetworkNode networkNode;
+    private final BroadcastBundler broadcastBundler;
     public final String uid;
     private PeerManager peerManager;
     private boolean stopped = false;
@@ -75,9 +75,10 @@ public class BroadcastHandler implements PeerManager.Listener {
     // Constructor
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    public BroadcastHandler(NetworkNode networkNode, PeerManager peerManager) {
+    BroadcastHandler(NetworkNode networkNode, PeerManager peerManager, BroadcastBundler broadcastBundler) {
         this.networkNode = networkNode;
         this.peerManager = peerManager;
+        this.broadcastBundler = broadcastBundler;
         peerManager.addListener(this);
         uid = UUID.randomUUID().toString();
     }
@@ -117,11 +118,13 @@ public class BroadcastHandler implements PeerManager.Listener {
                 factor = 2;
             }
             log.info("Broadcast message to {} peers out of {} total connected peers.", numOfPeers, connectedPeersSet.size());
+            int messageSize = BroadcastBundler.getEstimatedSize(message);
+            Random random = new Random();
             for (int i = 0; i < numOfPeers; i++) {
                 final long minDelay = i * 30 * factor + 1;
                 final long maxDelay = minDelay * 2 + 30 * factor;
-                final Connection connection = connectedPeersList.get(i);
-                UserThread.runAfterRandomDelay(() -> sendToPeer(connection, message), minDelay, maxDelay, TimeUnit.MILLISECONDS);
+                final long delay = random.nextInt((int) (maxDelay - minDelay)) + minDelay;
+                sendToPeer(connectedPeersList.get(i), message, messageSize, delay);
             }
 
             long timeoutDelay = TIMEOUT_PER_PEER_SEC * numOfPeers;
@@ -143,7 +146,8 @@ public class BroadcastHandler implements PeerManager.Listener {
         }
     }
 
-    private void sendToPeer(Connection connection, BroadcastMessage message) {
+    // The message is sent after the delay together with other broadcast messages for that peer
+    private void sendToPeer(Connection connection, BroadcastMessage message, int messageSize, long delay) {
         String errorMessage = "Message not broadcasted because we have stopped the handler already.\n\t" +
                 "message = " + StringUtils.abbreviate(message.toString(), 100);
         if (!stopped) {
@@ -151,7 +155,7 @@ public class BroadcastHandler implements PeerManager.Listener {
                 NodeAddress nodeAddress = connection.getPeersNodeAddressOptional().get();
                 log.trace("Broadcast message to " + nodeAddress + ".");
                 broadcastQueue.add(nodeAddress.getFullAddress());
-                SettableFuture<Connection> future = networkNode.sendMessage(connection, message);
+                SettableFuture<Connection> future = broadcastBundler.send(connection, message, messageSize, delay);
                 Futures.addCallback(future, new FutureCallback<Connection>() {
                     @Override
                     public void onSuccess(Connection connection) {
@@ -15,8 +15,16 @@ import java.util.concurrent.CopyOnWriteArraySet;
 public class Broadcaster implements BroadcastHandler.ResultHandler {
     private static final Logger log = LoggerFactory.getLogger(Broadcaster.class);
 
+    // Peers with an older version don't know the BroadcastBundleMessage and would close the connection at receiving
+    // one. Bundling is therefore disabled by default and the messages get sent one by one. It can be enabled once all
+    // peers have been updated.
+    public static void setBundlingEnabled(boolean bundlingEnabled) {
+        BroadcastBundler.setBundlingEnabled(bundlingEnabled);
+    }
+
     private final NetworkNode networkNode;
     private PeerManager peerManager;
+    private final BroadcastBundler broadcastBundler;
     private Set<BroadcastHandler> broadcastHandlers = new CopyOnWriteArraySet<>();
 
 
@@ -27,11 +35,13 @@ public class Broadcaster implements BroadcastHandler.ResultHandler {
     public Broadcaster(NetworkNode networkNode, PeerManager peerManager) {
         this.networkNode = networkNode;
         this.peerManager = peerManager;
+        broadcastBundler = new BroadcastBundler(networkNode);
     }
 
     public void shutDown() {
         broadcastHandlers.stream().forEach(BroadcastHandler::cancel);
         broadcastHandlers.clear();
+        broadcastBundler.shutDown();
     }
 
 
@@ -44,7 +54,7 @@ public class Broadcaster implements BroadcastHandler.ResultHandler {
         Log.traceCall("Sender=" + sender + "\n\t" +
                 "Message=" + StringUtils.abbreviate(message.toString(), 100));
 
-        BroadcastHandler broadcastHandler = new BroadcastHandler(networkNode, peerManager);
+        BroadcastHandler broadcastHandler = new BroadcastHandler(networkNode, peerManager, broadcastBundler);
         broadcastHandler.broadcast(message, sender, this, listener, isDataOwner);
         broadcastHandlers.add(broadcastHandler);
     }
@@ -63,4 +73,18 @@ public class Broadcaster implements BroadcastHandler.ResultHandler {
     public void onFault(BroadcastHandler broadcastHandler) {
         broadcastHandlers.remove(broadcastHandler);
     }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Getters
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public int getNumPendingBroadcasts() {
+        return broadcastHandlers.size();
+    }
+
+    // Messages waiting in a bundle for being sent
+    public int getNumBundledMessages() {
+        return broadcastBundler.getNumPendingMessages();
+    }
 }
@@ -8,21 +8,27 @@ import io.bitsquare.common.Timer;
 import io.bitsquare.common.UserThread;
 import io.bitsquare.p2p.network.CloseConnectionReason;
 import io.bitsquare.p2p.network.Connection;
+import io.bitsquare.p2p.network.NetworkMetrics;
 import io.bitsquare.p2p.network.NetworkNode;
 import io.bitsquare.p2p.peers.getdata.messages.GetDataRequest;
 import io.bitsquare.p2p.peers.getdata.messages.GetDataResponse;
 import io.bitsquare.p2p.storage.P2PDataStorage;
+import io.bitsquare.p2p.storage.storageentry.ProtectedStorageEntry;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class GetDataRequestHandler {
     private static final Logger log = LoggerFactory.getLogger(GetDataRequestHandler.class);
 
     private static final long TIME_OUT_SEC = Timer.STRESS_TEST ? 5 : 20;
+    private static final int MAX_CHUNK_SIZE = Connection.getMaxMsgSize() / 2;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -64,30 +70,49 @@ public class GetDataRequestHandler {
 
     public void handle(GetDataRequest getDataRequest, final Connection connection) {
         Log.traceCall(getDataRequest + "\n\tconnection=" + connection);
-        GetDataResponse getDataResponse = new GetDataResponse(new HashSet<>(dataStorage.getMap().values()),
-                getDataRequest.getNonce());
-        SettableFuture<Connection> future = networkNode.sendMessage(connection, getDataResponse);
-        Futures.addCallback(future, new FutureCallback<Connection>() {
-            @Override
-            public void onSuccess(Connection connection) {
-                log.trace("Send DataResponse to {} succeeded. getDataResponse={}",
-                        connection.getPeersNodeAddressOptional(), getDataResponse);
-                cleanup();
-                listener.onComplete();
-            }
+        long startTime = System.currentTimeMillis();
+        long sentBytesBefore = connection.getStatistic().getSentBytes();
+        // We send only the data the requester does not have yet
+        HashSet<ProtectedStorageEntry> dataSet = KnownDataDigest.getMissingEntries(dataStorage.getMap(),
+                getDataRequest.getKnownDataDigest());
+        List<GetDataResponse> getDataResponses;
+        if (getDataRequest.getKnownDataDigest() != null) {
+            // Peers sending a digest support chunked responses
+            getDataResponses = createChunkedResponses(dataSet, getDataRequest.getNonce());
+        } else {
+            getDataResponses = Collections.singletonList(new GetDataResponse(dataSet, getDataRequest.getNonce()));
+        }
 
-            @Override
-            public void onFailure(@NotNull Throwable throwable) {
-                String errorMessage = "Sending getDataRequest to " + connection +
-                        " failed. That is expected if the peer is offline. getDataResponse=" + getDataResponse + "." +
-                        "Exception: " + throwable.getMessage();
-                handleFault(errorMessage, CloseConnectionReason.SEND_MSG_FAILURE, connection);
-            }
+        // The chunks are queued at the connection and written in order
+        getDataResponses.stream().forEach(getDataResponse -> {
+            SettableFuture<Connection> future = networkNode.sendMessage(connection, getDataResponse);
+            Futures.addCallback(future, new FutureCallback<Connection>() {
+                @Override
+                public void onSuccess(Connection connection) {
+                    if (!getDataResponse.hasMoreChunks && !stopped) {
+                        log.trace("Send DataResponse to {} succeeded. getDataResponse={}",
+                                connection.getPeersNodeAddressOptional(), getDataResponse);
+                        NetworkMetrics.addGetDataResponse(connection.getStatistic().getSentBytes() - sentBytesBefore,
+                                System.currentTimeMillis() - startTime);
+                        cleanup();
+                        listener.onComplete();
+                    }
+                }
+
+                @Override
+                public void onFailure(@NotNull Throwable throwable) {
+                    String errorMessage = "Sending getDataRequest to " + connection +
+                            " failed. That is expected if the peer is offline. getDataResponse=" + getDataResponse + "." +
+                            "Exception: " + throwable.getMessage();
+                    handleFault(errorMessage, CloseConnectionReason.SEND_MSG_FAILURE, connection);
+                }
+            });
         });
 
+        GetDataResponse lastGetDataResponse = getDataResponses.get(getDataResponses.size() - 1);
         if (timeoutTimer == null) {
             timeoutTimer = UserThread.runAfter(() -> {
-                        String errorMessage = "A timeout occurred for getDataResponse:" + getDataResponse +
+                        String errorMessage = "A timeout occurred for getDataResponse:" + lastGetDataResponse +
                                 " on connection:" + connection;
                         handleFault(errorMessage, CloseConnectionReason.SEND_MSG_TIMEOUT, connection);
                     },
@@ -99,6 +124,33 @@ public class GetDataRequestHandler {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    // Each chunk uses max. half of the max. message size
+    private List<GetDataResponse> createChunkedResponses(HashSet<ProtectedStorageEntry> dataSet, int nonce) {
+        List<HashSet<ProtectedStorageEntry>> chunks = new ArrayList<>();
+        HashSet<ProtectedStorageEntry> chunk = new HashSet<>();
+        int chunkSize = 0;
+        for (ProtectedStorageEntry protectedStorageEntry : dataSet) {
+            // We use the estimated size as serializing each entry at each request would be too expensive
+            int entrySize = protectedStorageEntry.getEstimatedSize();
+            if (!chunk.isEmpty() && chunkSize + entrySize > MAX_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new HashSet<>();
+                chunkSize = 0;
+            }
+            chunk.add(protectedStorageEntry);
+            chunkSize += entrySize;
+        }
+        // The last chunk might be empty, we need it anyway as completion marker
+        chunks.add(chunk);
+
+        List<GetDataResponse> getDataResponses = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++)
+            getDataResponses.add(new GetDataResponse(chunks.get(i), nonce, i, i < chunks.size() - 1));
+
+        log.info("We send {} entries in {} chunks.", dataSet.size(), chunks.size());
+        return getDataResponses;
+    }
+
     private void handleFault(String errorMessage, CloseConnectionReason closeConnectionReason, Connection connection) {
         if (!stopped) {
             log.info(errorMessage + "\n\tcloseConnectionReason=" + closeConnectionReason);
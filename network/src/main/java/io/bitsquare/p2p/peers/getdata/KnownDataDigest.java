@@ -0,0 +1,75 @@
+package io.bitsquare.p2p.peers.getdata;
+
+import io.bitsquare.p2p.network.Connection;
+import io.bitsquare.p2p.storage.P2PDataStorage;
+import io.bitsquare.p2p.storage.storageentry.ProtectedStorageEntry;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Compact list of the data we already have, sent with the GetDataRequest so the peer only sends us the entries we
+ * are missing or which have a higher sequence number.
+ * Per entry it contains the first 8 bytes of the payload hash and the sequence number, so 12 bytes instead of the
+ * whole entry.
+ */
+final class KnownDataDigest {
+    static final int KEY_PREFIX_LENGTH = 8;
+    static final int RECORD_LENGTH = KEY_PREFIX_LENGTH + 4;
+    // We stay well below the max. message size. Entries which don't fit are sent again by the peer.
+    static final int MAX_ENTRIES = Connection.getMaxMsgSize() / 2 / RECORD_LENGTH;
+
+    private KnownDataDigest() {
+    }
+
+    // Called by the requester
+    static byte[] create(Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> map) {
+        int numEntries = Math.min(map.size(), MAX_ENTRIES);
+        ByteBuffer buffer = ByteBuffer.allocate(numEntries * RECORD_LENGTH);
+        for (Map.Entry<P2PDataStorage.ByteArray, ProtectedStorageEntry> entry : map.entrySet()) {
+            // The map might have grown in the meantime
+            if (buffer.remaining() < RECORD_LENGTH)
+                break;
+
+            buffer.putLong(getKeyPrefix(entry.getKey().bytes));
+            buffer.putInt(entry.getValue().sequenceNumber);
+        }
+        return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Called by the responder. Without a digest (requests from peers with an older version) we return all entries.
+    static HashSet<ProtectedStorageEntry> getMissingEntries(Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> map,
+                                                            @Nullable byte[] digest) {
+        if (digest == null)
+            return new HashSet<>(map.values());
+
+        Map<Long, Integer> sequenceNumberByKeyPrefix = parse(digest);
+        HashSet<ProtectedStorageEntry> result = new HashSet<>();
+        map.entrySet().stream().forEach(entry -> {
+            Integer knownSequenceNumber = sequenceNumberByKeyPrefix.get(getKeyPrefix(entry.getKey().bytes));
+            if (knownSequenceNumber == null || knownSequenceNumber < entry.getValue().sequenceNumber)
+                result.add(entry.getValue());
+        });
+        return result;
+    }
+
+    private static Map<Long, Integer> parse(byte[] digest) {
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        Map<Long, Integer> sequenceNumberByKeyPrefix = new HashMap<>(Math.min(digest.length / RECORD_LENGTH, MAX_ENTRIES) * 2);
+        // We ignore incomplete records and anything exceeding MAX_ENTRIES
+        while (buffer.remaining() >= RECORD_LENGTH && sequenceNumberByKeyPrefix.size() < MAX_ENTRIES)
+            sequenceNumberByKeyPrefix.put(buffer.getLong(), buffer.getInt());
+        return sequenceNumberByKeyPrefix;
+    }
+
+    private static long getKeyPrefix(byte[] hash) {
+        long prefix = 0;
+        for (int i = 0; i < KEY_PREFIX_LENGTH && i < hash.length; i++)
+            prefix = (prefix << 8) | (hash[i] & 0xFF);
+        return prefix;
+    }
+}
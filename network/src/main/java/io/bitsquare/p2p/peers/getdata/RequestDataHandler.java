@@ -56,6 +56,7 @@ public class RequestDataHandler implements MessageListener {
     private final int nonce = new Random().nextInt();
     private boolean stopped;
     private Connection connection;
+    private int expectedChunkIndex;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -82,11 +83,13 @@ public class RequestDataHandler implements MessageListener {
     public void requestData(NodeAddress nodeAddress) {
         Log.traceCall("nodeAddress=" + nodeAddress);
         if (!stopped) {
+            // We tell the peer which data we have already, so it sends us only the missing or updated entries
+            byte[] knownDataDigest = KnownDataDigest.create(dataStorage.getMap());
             GetDataRequest getDataRequest;
             if (networkNode.getNodeAddress() == null)
-                getDataRequest = new PreliminaryGetDataRequest(nonce);
+                getDataRequest = new PreliminaryGetDataRequest(nonce, knownDataDigest);
             else
-                getDataRequest = new GetUpdatedDataRequest(networkNode.getNodeAddress(), nonce);
+                getDataRequest = new GetUpdatedDataRequest(networkNode.getNodeAddress(), nonce, knownDataDigest);
 
             log.info("We send a {} to peer {}. ", getDataRequest.getClass().getSimpleName(), nodeAddress);
 
@@ -157,12 +160,34 @@ public class RequestDataHandler implements MessageListener {
                                     "at that moment");
 
                     final NodeAddress sender = connection.getPeersNodeAddressOptional().get();
-                    ((GetDataResponse) message).dataSet.stream().forEach(protectedStorageEntry -> {
+                    if (getDataResponse.chunkIndex != expectedChunkIndex) {
+                        String errorMessage = "Received chunk of getDataResponse out of order. " +
+                                "expectedChunkIndex=" + expectedChunkIndex + " / getDataResponse=" + getDataResponse;
+                        log.warn(errorMessage);
+                        handleFault(errorMessage, sender, CloseConnectionReason.RULE_VIOLATION);
+                        return;
+                    }
+
+                    // We add the data of each chunk directly, so the offers show up before the last chunk arrived
+                    getDataResponse.dataSet.stream().forEach(protectedStorageEntry -> {
                         dataStorage.add(protectedStorageEntry, sender, null, false);
                     });
 
-                    cleanup();
-                    listener.onComplete();
+                    if (getDataResponse.hasMoreChunks) {
+                        expectedChunkIndex++;
+                        timeoutTimer = UserThread.runAfter(() -> {
+                                    if (!stopped) {
+                                        String errorMessage = "A timeout occurred at waiting for chunk " +
+                                                expectedChunkIndex + " of getDataResponse from nodeAddress:" + sender;
+                                        log.info(errorMessage + " / RequestDataHandler=" + RequestDataHandler.this);
+                                        handleFault(errorMessage, sender, CloseConnectionReason.SEND_MSG_TIMEOUT);
+                                    }
+                                },
+                                TIME_OUT_SEC);
+                    } else {
+                        cleanup();
+                        listener.onComplete();
+                    }
                 } else {
                     log.debug("Nonce not matching. That can happen rarely if we get a response after a canceled " +
                                     "handshake (timeout causes connection close but peer might have sent a msg before " +
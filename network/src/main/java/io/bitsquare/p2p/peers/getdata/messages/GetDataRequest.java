@@ -1,7 +1,12 @@
 package io.bitsquare.p2p.peers.getdata.messages;
 
 import io.bitsquare.p2p.Message;
+import org.jetbrains.annotations.Nullable;
 
 public interface GetDataRequest extends Message {
     int getNonce();
+
+    // Compact list of the data the requester has already. Null if the request comes from a peer with an older version.
+    @Nullable
+    byte[] getKnownDataDigest();
 }
@@ -13,10 +13,21 @@ public final class GetDataResponse implements Message {
 
     public final HashSet<ProtectedStorageEntry> dataSet;
     public final int requestNonce;
+    // If the data does not fit into one message it is sent in several chunks. The chunkIndex is the continuation 
+    // token the requester uses for detecting missing chunks, hasMoreChunks is false at the last chunk. 
+    // Peers with an older version don't send these fields, so their response is a single complete chunk (0/false).
+    public final int chunkIndex;
+    public final boolean hasMoreChunks;
 
     public GetDataResponse(HashSet<ProtectedStorageEntry> dataSet, int requestNonce) {
+        this(dataSet, requestNonce, 0, false);
+    }
+
+    public GetDataResponse(HashSet<ProtectedStorageEntry> dataSet, int requestNonce, int chunkIndex, boolean hasMoreChunks) {
         this.dataSet = dataSet;
         this.requestNonce = requestNonce;
+        this.chunkIndex = chunkIndex;
+        this.hasMoreChunks = hasMoreChunks;
     }
 
     @Override
@@ -30,6 +41,8 @@ public final class GetDataResponse implements Message {
                 "messageVersion=" + messageVersion +
                 ", dataSet.size()=" + dataSet.size() +
                 ", requestNonce=" + requestNonce +
+                ", chunkIndex=" + chunkIndex +
+                ", hasMoreChunks=" + hasMoreChunks +
                 '}';
     }
 }
@@ -3,6 +3,7 @@ package io.bitsquare.p2p.peers.getdata.messages;
 import io.bitsquare.app.Version;
 import io.bitsquare.p2p.NodeAddress;
 import io.bitsquare.p2p.network.messages.SendersNodeAddressMessage;
+import org.jetbrains.annotations.Nullable;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -13,11 +14,15 @@ public final class GetUpdatedDataRequest implements SendersNodeAddressMessage, G
     private final int messageVersion = Version.getP2PMessageVersion();
     private final NodeAddress senderNodeAddress;
     private final int nonce;
+    // Not set by peers running an older version
+    @Nullable
+    private final byte[] knownDataDigest;
 
-    public GetUpdatedDataRequest(NodeAddress senderNodeAddress, int nonce) {
+    public GetUpdatedDataRequest(NodeAddress senderNodeAddress, int nonce, byte[] knownDataDigest) {
         checkNotNull(senderNodeAddress, "senderNodeAddress must not be null at GetUpdatedDataRequest");
         this.senderNodeAddress = senderNodeAddress;
         this.nonce = nonce;
+        this.knownDataDigest = knownDataDigest;
     }
 
     @Override
@@ -30,6 +35,12 @@ public final class GetUpdatedDataRequest implements SendersNodeAddressMessage, G
         return senderNodeAddress;
     }
 
+    @Override
+    @Nullable
+    public byte[] getKnownDataDigest() {
+        return knownDataDigest;
+    }
+
     @Override
     public int getMessageVersion() {
         return messageVersion;
@@ -41,6 +52,7 @@ public final class GetUpdatedDataRequest implements SendersNodeAddressMessage, G
                 "messageVersion=" + messageVersion +
                 ", senderNodeAddress=" + senderNodeAddress +
                 ", nonce=" + nonce +
+                ", knownDataDigest.length=" + (knownDataDigest != null ? knownDataDigest.length : 0) +
                 '}';
     }
 }
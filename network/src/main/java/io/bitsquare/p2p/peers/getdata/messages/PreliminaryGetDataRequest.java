@@ -2,6 +2,7 @@ package io.bitsquare.p2p.peers.getdata.messages;
 
 import io.bitsquare.app.Version;
 import io.bitsquare.p2p.network.messages.AnonymousMessage;
+import org.jetbrains.annotations.Nullable;
 
 public final class PreliminaryGetDataRequest implements AnonymousMessage, GetDataRequest {
     // That object is sent over the wire, so we need to take care of version compatibility.
@@ -9,9 +10,13 @@ public final class PreliminaryGetDataRequest implements AnonymousMessage, GetDat
 
     private final int messageVersion = Version.getP2PMessageVersion();
     private final int nonce;
+    // Not set by peers running an older version
+    @Nullable
+    private final byte[] knownDataDigest;
 
-    public PreliminaryGetDataRequest(int nonce) {
+    public PreliminaryGetDataRequest(int nonce, byte[] knownDataDigest) {
         this.nonce = nonce;
+        this.knownDataDigest = knownDataDigest;
     }
 
     @Override
@@ -19,6 +24,12 @@ public final class PreliminaryGetDataRequest implements AnonymousMessage, GetDat
         return nonce;
     }
 
+    @Override
+    @Nullable
+    public byte[] getKnownDataDigest() {
+        return knownDataDigest;
+    }
+
     @Override
     public int getMessageVersion() {
         return messageVersion;
@@ -29,6 +40,7 @@ public final class PreliminaryGetDataRequest implements AnonymousMessage, GetDat
         return "PreliminaryGetDataRequest{" +
                 "messageVersion=" + messageVersion +
                 ", nonce=" + nonce +
+                ", knownDataDigest.length=" + (knownDataDigest != null ? knownDataDigest.length : 0) +
                 '}';
     }
 }
@@ -79,7 +79,7 @@ class KeepAliveHandler implements MessageListener {
     private void sendPing(Connection connection) {
         Log.traceCall("connection=" + connection + " / this=" + this);
         if (!stopped) {
-            Ping ping = new Ping(nonce, connection.getStatistic().roundTripTimeProperty().get());
+            Ping ping = new Ping(nonce, connection.getStatistic().getRoundTripTime());
             sendTs = System.currentTimeMillis();
             SettableFuture<Connection> future = networkNode.sendMessage(connection, ping);
             Futures.addCallback(future, new FutureCallback<Connection>() {
@@ -129,7 +129,7 @@ class KeepAliveHandler implements MessageListener {
                 if (pong.requestNonce == nonce) {
                     int roundTripTime = (int) (System.currentTimeMillis() - sendTs);
                     log.trace("roundTripTime=" + roundTripTime + "\n\tconnection=" + connection);
-                    connection.getStatistic().setRoundTripTime(roundTripTime);
+                    connection.getStatistic().addMeasuredRoundTripTime(roundTripTime);
                     cleanup();
                     listener.onComplete();
                 } else {
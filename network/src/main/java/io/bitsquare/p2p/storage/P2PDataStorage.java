@@ -1,6 +1,8 @@
 package io.bitsquare.p2p.storage;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.bitsquare.app.Log;
 import io.bitsquare.app.Version;
 import io.bitsquare.common.Timer;
@@ -30,12 +32,11 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 // Run in UserThread
 public class P2PDataStorage implements MessageListener, ConnectionListener {
@@ -43,13 +44,31 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
     @VisibleForTesting
     public static int CHECK_TTL_INTERVAL_SEC = Timer.STRESS_TEST ? 5 : 60;
+    private static final long PERSIST_ENTRIES_INTERVAL_SEC = Timer.STRESS_TEST ? 5 : 5 * 60;
 
     private final Broadcaster broadcaster;
     private final Map<ByteArray, ProtectedStorageEntry> map = new ConcurrentHashMap<>();
+    // Hashes of the RequiresOwnerIsOnlinePayload entries in the map by their owner, so at a disconnect we don't need 
+    // to scan the whole map. Only changed together with the map at addToMap and removeFromMap.
+    private final Map<NodeAddress, Set<ByteArray>> hashesByOwnerNodeAddress = new ConcurrentHashMap<>();
     private final CopyOnWriteArraySet<HashMapChangedListener> hashMapChangedListeners = new CopyOnWriteArraySet<>();
     private Timer removeExpiredEntriesTimer;
     private HashMap<ByteArray, MapValue> sequenceNumberMap = new HashMap<>();
-    private final Storage<HashMap> storage;
+    private final SequenceNumberJournal sequenceNumberJournal;
+    // Snapshot of the map, so after a restart we can show the data before we are connected to the network
+    private final Storage<ArrayList> persistedEntriesStorage;
+    private Timer persistEntriesTimer;
+
+    // Hashing and signature verification of received data runs in parallel on that pool. The checks depending on our
+    // state, the map mutation and the listener calls stay on the UserThread.
+    private final ExecutorService preValidationExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            new ThreadFactoryBuilder().setNameFormat("P2PDataStorage.PreValidation-%d").setDaemon(true).build());
+    // Received messages in the order of arrival. We process them in that order even if a later one finished its 
+    // pre-validation first, as otherwise a remove could overtake the add of the same data.
+    private final Queue<PreValidatedMessage> preValidatedMessages = new ConcurrentLinkedQueue<>();
+    // Only accessed on the UserThread
+    private final SeenMessageCache seenMessageCache = new SeenMessageCache();
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -61,16 +80,29 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
         networkNode.addMessageListener(this);
         networkNode.addConnectionListener(this);
 
-        storage = new Storage<>(storageDir);
+        sequenceNumberJournal = new SequenceNumberJournal(storageDir);
+        sequenceNumberMap = getPurgedSequenceNumberMap(
+                sequenceNumberJournal.replay(sequenceNumberJournal.readSnapshot()));
+        // We start with a fresh snapshot without the purged entries and an empty journal
+        sequenceNumberJournal.compact(sequenceNumberMap);
 
-        HashMap<ByteArray, MapValue> persisted = storage.initAndGetPersisted("SequenceNumberMap");
-        if (persisted != null)
-            sequenceNumberMap = getPurgedSequenceNumberMap(persisted);
+        persistedEntriesStorage = new Storage<>(storageDir);
+        ArrayList<PersistedEntry> persistedEntries = persistedEntriesStorage.initAndGetPersisted("PersistedEntries");
+        if (persistedEntries != null)
+            addPersistedEntries(persistedEntries);
     }
 
     public void shutDown() {
         if (removeExpiredEntriesTimer != null)
             removeExpiredEntriesTimer.stop();
+
+        if (persistEntriesTimer != null) {
+            persistEntriesTimer.stop();
+            persistEntries();
+        }
+
+        MoreExecutors.shutdownAndAwaitTermination(preValidationExecutor, 500, TimeUnit.MILLISECONDS);
+        sequenceNumberJournal.shutDown();
     }
 
     public void onBootstrapComplete() {
@@ -90,16 +122,22 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
                         ProtectedStorageEntry protectedStorageEntry = map.get(hashOfPayload);
                         toRemoveSet.add(protectedStorageEntry);
                         log.info("We found an expired data entry. We remove the protectedData:\n\t" + protectedStorageEntry);
-                        map.remove(hashOfPayload);
+                        removeFromMap(hashOfPayload);
                     });
 
             toRemoveSet.stream().forEach(
                     protectedDataToRemove -> hashMapChangedListeners.stream().forEach(
                             listener -> listener.onRemoved(protectedDataToRemove)));
 
-            if (sequenceNumberMap.size() > 1000)
+            if (sequenceNumberMap.size() > 1000) {
                 sequenceNumberMap = getPurgedSequenceNumberMap(sequenceNumberMap);
+                // The journal does not know about removed entries
+                sequenceNumberJournal.compact(sequenceNumberMap);
+            }
         }, CHECK_TTL_INTERVAL_SEC);
+
+        // We persist only after we got the data from the network
+        persistEntriesTimer = UserThread.runPeriodically(this::persistEntries, PERSIST_ENTRIES_INTERVAL_SEC);
     }
 
 
@@ -109,22 +147,110 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
     @Override
     public void onMessage(Message message, Connection connection) {
-        if (message instanceof BroadcastMessage) {
+        if (message instanceof BroadcastBundleMessage) {
+            Log.traceCall(message.toString() + "\n\tconnection=" + connection);
+            // We don't trust the content type of the received list
+            List<?> broadcastMessages = ((BroadcastBundleMessage) message).broadcastMessages;
+            broadcastMessages.stream()
+                    .filter(broadcastMessage -> broadcastMessage instanceof BroadcastMessage)
+                    .forEach(broadcastMessage -> onMessage((BroadcastMessage) broadcastMessage, connection));
+        } else if (message instanceof BroadcastMessage) {
             Log.traceCall(StringUtils.abbreviate(message.toString(), 100) + "\n\tconnection=" + connection);
+            if (seenMessageCache.contains((BroadcastMessage) message)) {
+                log.trace("We have processed that message already. We ignore the copy.");
+                return;
+            }
+
             connection.getPeersNodeAddressOptional().ifPresent(peersNodeAddress -> {
-                if (message instanceof AddDataMessage) {
-                    add(((AddDataMessage) message).protectedStorageEntry, peersNodeAddress, null, false);
-                } else if (message instanceof RemoveDataMessage) {
-                    remove(((RemoveDataMessage) message).protectedStorageEntry, peersNodeAddress, false);
-                } else if (message instanceof RemoveMailboxDataMessage) {
-                    removeMailboxData(((RemoveMailboxDataMessage) message).protectedMailboxStorageEntry, peersNodeAddress, false);
-                } else if (message instanceof RefreshTTLMessage) {
-                    refreshTTL((RefreshTTLMessage) message, peersNodeAddress, false);
+                PreValidatedMessage preValidatedMessage = new PreValidatedMessage((BroadcastMessage) message, peersNodeAddress);
+                preValidatedMessages.add(preValidatedMessage);
+                try {
+                    preValidationExecutor.execute(() -> {
+                        preValidate(preValidatedMessage);
+                        UserThread.execute(this::processPreValidatedMessages);
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.debug("preValidationExecutor got shut down. We ignore the message.");
+                    preValidatedMessages.remove(preValidatedMessage);
                 }
             });
         }
     }
 
+    // Called from the preValidationExecutor. Only checks which don't depend on our state.
+    private void preValidate(PreValidatedMessage preValidatedMessage) {
+        try {
+            BroadcastMessage message = preValidatedMessage.message;
+            if (message instanceof AddDataMessage) {
+                ProtectedStorageEntry protectedStorageEntry = ((AddDataMessage) message).protectedStorageEntry;
+                preValidatedMessage.hashOfPayload = getHashAsByteArray(protectedStorageEntry);
+                preValidatedMessage.isValidSignedEntry = checkPublicKeys(protectedStorageEntry, true)
+                        && checkSignature(protectedStorageEntry);
+            } else if (message instanceof RemoveDataMessage) {
+                ProtectedStorageEntry protectedStorageEntry = ((RemoveDataMessage) message).protectedStorageEntry;
+                preValidatedMessage.hashOfPayload = getHashAsByteArray(protectedStorageEntry);
+                preValidatedMessage.isValidSignedEntry = checkPublicKeys(protectedStorageEntry, false)
+                        && checkSignature(protectedStorageEntry);
+            } else if (message instanceof RemoveMailboxDataMessage) {
+                ProtectedMailboxStorageEntry protectedMailboxStorageEntry = ((RemoveMailboxDataMessage) message).protectedMailboxStorageEntry;
+                preValidatedMessage.hashOfPayload = getHashAsByteArray(protectedMailboxStorageEntry);
+                preValidatedMessage.isValidSignedEntry = isValidSignedMailboxEntryForRemove(protectedMailboxStorageEntry);
+            } else if (message instanceof RefreshTTLMessage) {
+                // The signature is checked against the owner key of the data we have stored. The map might have 
+                // changed until we process the message, so we remember the key we used.
+                RefreshTTLMessage refreshTTLMessage = (RefreshTTLMessage) message;
+                ProtectedStorageEntry storedData = map.get(new ByteArray(refreshTTLMessage.hashOfPayload));
+                if (storedData != null) {
+                    PublicKey ownerPubKey = storedData.getStoragePayload().getOwnerPubKey();
+                    preValidatedMessage.verifiedOwnerPubKey = ownerPubKey;
+                    preValidatedMessage.isValidSignedEntry = checkSignature(ownerPubKey,
+                            refreshTTLMessage.hashOfDataAndSeqNr, refreshTTLMessage.signature);
+                }
+            } else if (message instanceof RefreshTTLBundleMessage) {
+                preValidatedMessage.isValidSignedEntry = checkSignature((RefreshTTLBundleMessage) message);
+            }
+        } catch (Throwable t) {
+            log.error("Pre-validation of message failed. message={}, error={}",
+                    StringUtils.abbreviate(preValidatedMessage.message.toString(), 100), t.getMessage());
+            preValidatedMessage.isValidSignedEntry = false;
+        } finally {
+            preValidatedMessage.isDone = true;
+        }
+    }
+
+    // Called on the UserThread
+    private synchronized void processPreValidatedMessages() {
+        PreValidatedMessage preValidatedMessage;
+        while ((preValidatedMessage = preValidatedMessages.peek()) != null && preValidatedMessage.isDone) {
+            preValidatedMessages.poll();
+            BroadcastMessage message = preValidatedMessage.message;
+            NodeAddress sender = preValidatedMessage.sender;
+            boolean isValidSignedEntry = preValidatedMessage.isValidSignedEntry;
+
+            boolean result = false;
+            if (message instanceof AddDataMessage) {
+                result = add(((AddDataMessage) message).protectedStorageEntry, preValidatedMessage.hashOfPayload,
+                        isValidSignedEntry, sender, null, false);
+            } else if (message instanceof RemoveDataMessage) {
+                result = remove(((RemoveDataMessage) message).protectedStorageEntry, preValidatedMessage.hashOfPayload,
+                        isValidSignedEntry, sender, false);
+            } else if (message instanceof RemoveMailboxDataMessage) {
+                result = removeMailboxData(((RemoveMailboxDataMessage) message).protectedMailboxStorageEntry,
+                        preValidatedMessage.hashOfPayload, isValidSignedEntry, sender, false);
+            } else if (message instanceof RefreshTTLMessage) {
+                result = refreshTTL((RefreshTTLMessage) message, preValidatedMessage.verifiedOwnerPubKey,
+                        isValidSignedEntry, sender, false);
+            } else if (message instanceof RefreshTTLBundleMessage) {
+                result = refreshTTL((RefreshTTLBundleMessage) message, isValidSignedEntry, sender, false);
+            }
+
+            // Copies of that message we receive later are dropped at onMessage. We add only messages we have applied
+            // successfully, so a manipulated copy which arrives first cannot suppress the real one.
+            if (result)
+                seenMessageCache.add(message);
+        }
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // ConnectionListener implementation
@@ -137,29 +263,22 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
     @Override
     public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
         if (connection.hasPeersNodeAddress() && !closeConnectionReason.isIntended) {
-            map.values().stream()
-                    .forEach(protectedData -> {
-                        ExpirablePayload expirablePayload = protectedData.getStoragePayload();
-                        if (expirablePayload instanceof RequiresOwnerIsOnlinePayload) {
-                            RequiresOwnerIsOnlinePayload requiresOwnerIsOnlinePayload = (RequiresOwnerIsOnlinePayload) expirablePayload;
-                            NodeAddress ownerNodeAddress = requiresOwnerIsOnlinePayload.getOwnerNodeAddress();
-                            if (ownerNodeAddress.equals(connection.getPeersNodeAddressOptional().get())) {
-                                // We have a RequiresLiveOwnerData data object with the node address of the 
-                                // disconnected peer. We remove that data from our map.
-
-                                // Check if we have the data (e.g. Offer)
-                                ByteArray hashOfPayload = getHashAsByteArray(expirablePayload);
-                                boolean containsKey = map.containsKey(hashOfPayload);
-                                if (containsKey) {
-                                    log.info("We remove the data as the data owner got disconnected with " +
-                                            "closeConnectionReason=" + closeConnectionReason);
-                                    doRemoveProtectedExpirableData(protectedData, hashOfPayload);
-                                } else {
-                                    log.debug("Remove data ignored as we don't have an entry for that data.");
-                                }
-                            }
-                        }
-                    });
+            Set<ByteArray> hashesOfOwner = hashesByOwnerNodeAddress.get(connection.getPeersNodeAddressOptional().get());
+            if (hashesOfOwner != null) {
+                // We have RequiresLiveOwnerData data objects with the node address of the 
+                // disconnected peer. We remove that data from our map.
+                new HashSet<>(hashesOfOwner).stream().forEach(hashOfPayload -> {
+                    // Check if we have the data (e.g. Offer)
+                    ProtectedStorageEntry protectedData = map.get(hashOfPayload);
+                    if (protectedData != null) {
+                        log.info("We remove the data as the data owner got disconnected with " +
+                                "closeConnectionReason=" + closeConnectionReason);
+                        doRemoveProtectedExpirableData(protectedData, hashOfPayload);
+                    } else {
+                        log.debug("Remove data ignored as we don't have an entry for that data.");
+                    }
+                });
+            }
         }
     }
 
@@ -176,19 +295,22 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
     public boolean add(ProtectedStorageEntry protectedStorageEntry, @Nullable NodeAddress sender,
                        @Nullable BroadcastHandler.Listener listener, boolean isDataOwner) {
         Log.traceCall();
+        ByteArray hashOfPayload = getHashAsByteArray(protectedStorageEntry);
+        boolean isValidSignedEntry = checkPublicKeys(protectedStorageEntry, true) && checkSignature(protectedStorageEntry);
+        return add(protectedStorageEntry, hashOfPayload, isValidSignedEntry, sender, listener, isDataOwner);
+    }
 
-        ByteArray hashOfPayload = getHashAsByteArray(protectedStorageEntry.getStoragePayload());
+    private boolean add(ProtectedStorageEntry protectedStorageEntry, ByteArray hashOfPayload, boolean isValidSignedEntry,
+                        @Nullable NodeAddress sender, @Nullable BroadcastHandler.Listener listener, boolean isDataOwner) {
         boolean sequenceNrValid = isSequenceNrValid(protectedStorageEntry.sequenceNumber, hashOfPayload);
-        boolean result = checkPublicKeys(protectedStorageEntry, true)
-                && checkSignature(protectedStorageEntry)
-                && sequenceNrValid;
+        boolean result = isValidSignedEntry && sequenceNrValid;
 
         boolean containsKey = map.containsKey(hashOfPayload);
         if (containsKey)
             result &= checkIfStoredDataPubKeyMatchesNewDataPubKey(protectedStorageEntry.ownerPubKey, hashOfPayload);
 
         if (result) {
-            map.put(hashOfPayload, protectedStorageEntry);
+            addToMap(hashOfPayload, protectedStorageEntry);
 
             StringBuilder sb = new StringBuilder("\n\n------------------------------------------------------------\n");
             sb.append("Data set after doAdd (truncated)");
@@ -198,8 +320,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
             log.info("Data set after doAdd: size=" + map.values().size());
 
             if (hasSequenceNrIncreased(protectedStorageEntry.sequenceNumber, hashOfPayload)) {
-                sequenceNumberMap.put(hashOfPayload, new MapValue(protectedStorageEntry.sequenceNumber, System.currentTimeMillis()));
-                storage.queueUpForSave(sequenceNumberMap, 100);
+                putSequenceNumber(hashOfPayload, new MapValue(protectedStorageEntry.sequenceNumber, System.currentTimeMillis()));
 
                 broadcast(new AddDataMessage(protectedStorageEntry), sender, listener, isDataOwner);
             }
@@ -213,7 +334,12 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
     public boolean refreshTTL(RefreshTTLMessage refreshTTLMessage, @Nullable NodeAddress sender, boolean isDataOwner) {
         Log.traceCall();
+        return refreshTTL(refreshTTLMessage, null, false, sender, isDataOwner);
+    }
 
+    // If the signature was already verified with the current owner key of our stored data we don't verify it again
+    private boolean refreshTTL(RefreshTTLMessage refreshTTLMessage, @Nullable PublicKey verifiedOwnerPubKey,
+                               boolean isSignatureValid, @Nullable NodeAddress sender, boolean isDataOwner) {
         byte[] hashOfDataAndSeqNr = refreshTTLMessage.hashOfDataAndSeqNr;
         byte[] signature = refreshTTLMessage.signature;
         ByteArray hashOfPayload = new ByteArray(refreshTTLMessage.hashOfPayload);
@@ -227,7 +353,9 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
                 return true;
             } else {
                 PublicKey ownerPubKey = storedData.getStoragePayload().getOwnerPubKey();
-                boolean result = checkSignature(ownerPubKey, hashOfDataAndSeqNr, signature) &&
+                boolean signatureValid = ownerPubKey.equals(verifiedOwnerPubKey) ?
+                        isSignatureValid : checkSignature(ownerPubKey, hashOfDataAndSeqNr, signature);
+                boolean result = signatureValid &&
                         hasSequenceNrIncreased(sequenceNumber, hashOfPayload) &&
                         checkIfStoredDataPubKeyMatchesNewDataPubKey(ownerPubKey, hashOfPayload);
 
@@ -237,8 +365,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
                     storedData.updateSequenceNumber(sequenceNumber);
                     storedData.updateSignature(signature);
 
-                    sequenceNumberMap.put(hashOfPayload, new MapValue(sequenceNumber, System.currentTimeMillis()));
-                    storage.queueUpForSave(sequenceNumberMap, 100);
+                    putSequenceNumber(hashOfPayload, new MapValue(sequenceNumber, System.currentTimeMillis()));
 
                     StringBuilder sb = new StringBuilder("\n\n------------------------------------------------------------\n");
                     sb.append("Data set after refreshTTL (truncated)");
@@ -259,16 +386,70 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
         }
     }
 
+    public boolean refreshTTL(RefreshTTLBundleMessage refreshTTLBundleMessage, @Nullable NodeAddress sender,
+                              boolean isDataOwner) {
+        Log.traceCall();
+        return refreshTTL(refreshTTLBundleMessage, checkSignature(refreshTTLBundleMessage), sender, isDataOwner);
+    }
+
+    // The sequence number of a RefreshTTLBundleMessage is stored under the hash of the owner pub key. Only the TTL 
+    // of the data entries gets refreshed, their sequence number and signature stay unchanged, so they can still be 
+    // verified by peers requesting our data.
+    private boolean refreshTTL(RefreshTTLBundleMessage refreshTTLBundleMessage, boolean isSignatureValid,
+                               @Nullable NodeAddress sender, boolean isDataOwner) {
+        if (!isSignatureValid) {
+            log.warn("Checks for refreshTTL of RefreshTTLBundleMessage failed");
+            return false;
+        }
+
+        ByteArray hashOfOwnerPubKey = getHashOfOwnerPubKey(refreshTTLBundleMessage.ownerPubKey);
+        int sequenceNumber = refreshTTLBundleMessage.sequenceNumber;
+        if (sequenceNumberMap.containsKey(hashOfOwnerPubKey) && sequenceNumberMap.get(hashOfOwnerPubKey).sequenceNr == sequenceNumber) {
+            log.trace("We got that message with that seq nr already from another peer. We ignore that message.");
+            return true;
+        } else if (!hasSequenceNrIncreased(sequenceNumber, hashOfOwnerPubKey)) {
+            log.warn("Checks for refreshTTL of RefreshTTLBundleMessage failed");
+            return false;
+        }
+
+        putSequenceNumber(hashOfOwnerPubKey, new MapValue(sequenceNumber, System.currentTimeMillis()));
+
+        // We refresh only the data of the owner who signed the message
+        int numRefreshed = 0;
+        for (byte[] hash : refreshTTLBundleMessage.hashesOfPayload) {
+            ProtectedStorageEntry storedData = hash != null ? map.get(new ByteArray(hash)) : null;
+            if (storedData != null && storedData.getStoragePayload().getOwnerPubKey().equals(refreshTTLBundleMessage.ownerPubKey)) {
+                storedData.updateTimeStamp();
+                numRefreshed++;
+            }
+        }
+
+        if (numRefreshed > 0) {
+            log.info("refreshTTL of RefreshTTLBundleMessage refreshed {} of {} data entries.",
+                    numRefreshed, refreshTTLBundleMessage.hashesOfPayload.size());
+            broadcast(refreshTTLBundleMessage, sender, null, isDataOwner);
+            return true;
+        } else {
+            log.debug("We don't have data for that refresh message in our map. That is expected if we missed the data publishing.");
+            return false;
+        }
+    }
+
     public boolean remove(ProtectedStorageEntry protectedStorageEntry, @Nullable NodeAddress sender, boolean isDataOwner) {
         Log.traceCall();
-        ByteArray hashOfPayload = getHashAsByteArray(protectedStorageEntry.getStoragePayload());
+        ByteArray hashOfPayload = getHashAsByteArray(protectedStorageEntry);
+        boolean isValidSignedEntry = checkPublicKeys(protectedStorageEntry, false) && checkSignature(protectedStorageEntry);
+        return remove(protectedStorageEntry, hashOfPayload, isValidSignedEntry, sender, isDataOwner);
+    }
+
+    private boolean remove(ProtectedStorageEntry protectedStorageEntry, ByteArray hashOfPayload, boolean isValidSignedEntry,
+                           @Nullable NodeAddress sender, boolean isDataOwner) {
         boolean containsKey = map.containsKey(hashOfPayload);
         if (!containsKey)
             log.debug("Remove data ignored as we don't have an entry for that data.");
         boolean result = containsKey
-                && checkPublicKeys(protectedStorageEntry, false)
+                && isValidSignedEntry
                 && isSequenceNrValid(protectedStorageEntry.sequenceNumber, hashOfPayload)
-                && checkSignature(protectedStorageEntry)
                 && checkIfStoredDataPubKeyMatchesNewDataPubKey(protectedStorageEntry.ownerPubKey, hashOfPayload);
 
 
@@ -277,8 +458,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
             broadcast(new RemoveDataMessage(protectedStorageEntry), sender, null, isDataOwner);
 
-            sequenceNumberMap.put(hashOfPayload, new MapValue(protectedStorageEntry.sequenceNumber, System.currentTimeMillis()));
-            storage.queueUpForSave(sequenceNumberMap, 100);
+            putSequenceNumber(hashOfPayload, new MapValue(protectedStorageEntry.sequenceNumber, System.currentTimeMillis()));
         } else {
             log.debug("remove failed");
         }
@@ -287,15 +467,19 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
     public boolean removeMailboxData(ProtectedMailboxStorageEntry protectedMailboxStorageEntry, @Nullable NodeAddress sender, boolean isDataOwner) {
         Log.traceCall();
-        ByteArray hashOfData = getHashAsByteArray(protectedMailboxStorageEntry.getStoragePayload());
+        ByteArray hashOfData = getHashAsByteArray(protectedMailboxStorageEntry);
+        return removeMailboxData(protectedMailboxStorageEntry, hashOfData,
+                isValidSignedMailboxEntryForRemove(protectedMailboxStorageEntry), sender, isDataOwner);
+    }
+
+    private boolean removeMailboxData(ProtectedMailboxStorageEntry protectedMailboxStorageEntry, ByteArray hashOfData,
+                                      boolean isValidSignedEntry, @Nullable NodeAddress sender, boolean isDataOwner) {
         boolean containsKey = map.containsKey(hashOfData);
         if (!containsKey)
             log.debug("Remove data ignored as we don't have an entry for that data.");
         boolean result = containsKey
-                && checkPublicKeys(protectedMailboxStorageEntry, false)
+                && isValidSignedEntry
                 && isSequenceNrValid(protectedMailboxStorageEntry.sequenceNumber, hashOfData)
-                && protectedMailboxStorageEntry.getMailboxStoragePayload().receiverPubKeyForRemoveOperation.equals(protectedMailboxStorageEntry.receiversPubKey) // at remove both keys are the same (only receiver is able to remove data)
-                && checkSignature(protectedMailboxStorageEntry)
                 && checkIfStoredMailboxDataMatchesNewMailboxData(protectedMailboxStorageEntry.receiversPubKey, hashOfData);
 
         if (result) {
@@ -303,8 +487,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
 
             broadcast(new RemoveMailboxDataMessage(protectedMailboxStorageEntry), sender, null, isDataOwner);
 
-            sequenceNumberMap.put(hashOfData, new MapValue(protectedMailboxStorageEntry.sequenceNumber, System.currentTimeMillis()));
-            storage.queueUpForSave(sequenceNumberMap, 100);
+            putSequenceNumber(hashOfData, new MapValue(protectedMailboxStorageEntry.sequenceNumber, System.currentTimeMillis()));
         } else {
             log.debug("removeMailboxData failed");
         }
@@ -344,6 +527,24 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
         return new RefreshTTLMessage(hashOfDataAndSeqNr, signature, hashOfPayload.bytes, sequenceNumber);
     }
 
+    // As the sequence number is kept per owner, a later bundle of the same owner invalidates an earlier one which has
+    // not arrived yet. All data of an owner should therefore be refreshed with one bundle.
+    public RefreshTTLBundleMessage getRefreshTTLBundleMessage(Collection<? extends StoragePayload> storagePayloads,
+                                                              KeyPair ownerStoragePubKey) throws CryptoException {
+        ArrayList<byte[]> hashesOfPayload = new ArrayList<>();
+        storagePayloads.stream().forEach(storagePayload -> hashesOfPayload.add(getHashAsByteArray(storagePayload).bytes));
+
+        ByteArray hashOfOwnerPubKey = getHashOfOwnerPubKey(ownerStoragePubKey.getPublic());
+        int sequenceNumber;
+        if (sequenceNumberMap.containsKey(hashOfOwnerPubKey))
+            sequenceNumber = sequenceNumberMap.get(hashOfOwnerPubKey).sequenceNr + 1;
+        else
+            sequenceNumber = 0;
+
+        byte[] signature = Sig.sign(ownerStoragePubKey.getPrivate(), getHashOfHashesAndSeqNr(hashesOfPayload, sequenceNumber));
+        return new RefreshTTLBundleMessage(ownerStoragePubKey.getPublic(), hashesOfPayload, sequenceNumber, signature);
+    }
+
     public ProtectedMailboxStorageEntry getMailboxDataWithSignedSeqNr(MailboxStoragePayload expirableMailboxStoragePayload,
                                                                       KeyPair storageSignaturePubKey, PublicKey receiversPublicKey)
             throws CryptoException {
@@ -369,8 +570,37 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    private void addToMap(ByteArray hashOfPayload, ProtectedStorageEntry protectedStorageEntry) {
+        map.put(hashOfPayload, protectedStorageEntry);
+
+        NodeAddress ownerNodeAddress = getOwnerNodeAddress(protectedStorageEntry);
+        if (ownerNodeAddress != null)
+            hashesByOwnerNodeAddress.computeIfAbsent(ownerNodeAddress, key -> ConcurrentHashMap.newKeySet()).add(hashOfPayload);
+    }
+
+    private void removeFromMap(ByteArray hashOfPayload) {
+        ProtectedStorageEntry removed = map.remove(hashOfPayload);
+
+        NodeAddress ownerNodeAddress = removed != null ? getOwnerNodeAddress(removed) : null;
+        if (ownerNodeAddress != null) {
+            hashesByOwnerNodeAddress.computeIfPresent(ownerNodeAddress, (key, hashes) -> {
+                hashes.remove(hashOfPayload);
+                return hashes.isEmpty() ? null : hashes;
+            });
+        }
+    }
+
+    @Nullable
+    private NodeAddress getOwnerNodeAddress(ProtectedStorageEntry protectedStorageEntry) {
+        StoragePayload storagePayload = protectedStorageEntry.getStoragePayload();
+        if (storagePayload instanceof RequiresOwnerIsOnlinePayload)
+            return ((RequiresOwnerIsOnlinePayload) storagePayload).getOwnerNodeAddress();
+        else
+            return null;
+    }
+
     private void doRemoveProtectedExpirableData(ProtectedStorageEntry protectedStorageEntry, ByteArray hashOfPayload) {
-        map.remove(hashOfPayload);
+        removeFromMap(hashOfPayload);
         log.trace("Data removed from our map. We broadcast the message to our peers.");
         hashMapChangedListeners.stream().forEach(e -> e.onRemoved(protectedStorageEntry));
 
@@ -428,11 +658,38 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
         }
     }
 
+    private boolean checkSignature(RefreshTTLBundleMessage refreshTTLBundleMessage) {
+        return refreshTTLBundleMessage.ownerPubKey != null && refreshTTLBundleMessage.hashesOfPayload != null &&
+                refreshTTLBundleMessage.signature != null &&
+                checkSignature(refreshTTLBundleMessage.ownerPubKey,
+                        getHashOfHashesAndSeqNr(refreshTTLBundleMessage.hashesOfPayload, refreshTTLBundleMessage.sequenceNumber),
+                        refreshTTLBundleMessage.signature);
+    }
+
+    private static byte[] getHashOfHashesAndSeqNr(List<byte[]> hashesOfPayload, int sequenceNumber) {
+        int length = hashesOfPayload.stream().mapToInt(hash -> hash != null ? hash.length : 0).sum();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length + 4);
+        hashesOfPayload.stream().filter(hash -> hash != null).forEach(byteBuffer::put);
+        byteBuffer.putInt(sequenceNumber);
+        return Hash.getHash(byteBuffer.array());
+    }
+
+    private static ByteArray getHashOfOwnerPubKey(PublicKey ownerPubKey) {
+        return new ByteArray(Hash.getHash(ownerPubKey.getEncoded()));
+    }
+
     private boolean checkSignature(ProtectedStorageEntry protectedStorageEntry) {
         byte[] hashOfDataAndSeqNr = Hash.getHash(new DataAndSeqNrPair(protectedStorageEntry.getStoragePayload(), protectedStorageEntry.sequenceNumber));
         return checkSignature(protectedStorageEntry.ownerPubKey, hashOfDataAndSeqNr, protectedStorageEntry.signature);
     }
 
+    private boolean isValidSignedMailboxEntryForRemove(ProtectedMailboxStorageEntry protectedMailboxStorageEntry) {
+        return checkPublicKeys(protectedMailboxStorageEntry, false)
+                // at remove both keys are the same (only receiver is able to remove data)
+                && protectedMailboxStorageEntry.getMailboxStoragePayload().receiverPubKeyForRemoveOperation.equals(protectedMailboxStorageEntry.receiversPubKey)
+                && checkSignature(protectedMailboxStorageEntry);
+    }
+
     private boolean checkPublicKeys(ProtectedStorageEntry protectedStorageEntry, boolean isAddOperation) {
         boolean result;
         if (protectedStorageEntry.getStoragePayload() instanceof MailboxStoragePayload) {
@@ -470,7 +727,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
             ProtectedMailboxStorageEntry storedMailboxData = (ProtectedMailboxStorageEntry) storedData;
             // publicKey is not the same (stored: sender, new: receiver)
             boolean result = storedMailboxData.receiversPubKey.equals(receiversPubKey)
-                    && getHashAsByteArray(storedMailboxData.getStoragePayload()).equals(hashOfData);
+                    && getHashAsByteArray(storedMailboxData).equals(hashOfData);
             if (!result)
                 log.error("New data entry does not match our stored data. Consider it might be an attempt of fraud");
 
@@ -490,6 +747,66 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
         return new ByteArray(Hash.getHash(data));
     }
 
+    // Uses the hash cached at the entry
+    private ByteArray getHashAsByteArray(ProtectedStorageEntry protectedStorageEntry) {
+        return new ByteArray(protectedStorageEntry.getHashOfPayload());
+    }
+
+    // The persisted entries are added without verification so they are shown at once. We verify them on the
+    // preValidationExecutor and remove the invalid ones.
+    private void addPersistedEntries(List<PersistedEntry> persistedEntries) {
+        List<PersistedEntry> addedEntries = new ArrayList<>();
+        persistedEntries.stream()
+                .filter(persistedEntry -> persistedEntry != null && persistedEntry.protectedStorageEntry != null &&
+                        persistedEntry.protectedStorageEntry.getStoragePayload() != null &&
+                        persistedEntry.protectedStorageEntry.ownerPubKey != null)
+                .forEach(persistedEntry -> {
+                    ProtectedStorageEntry protectedStorageEntry = persistedEntry.protectedStorageEntry;
+                    // The timeStamp is not serialized
+                    protectedStorageEntry.timeStamp = persistedEntry.timeStamp;
+                    if (!protectedStorageEntry.isExpired()) {
+                        addToMap(new ByteArray(persistedEntry.hashOfPayload), protectedStorageEntry);
+                        addedEntries.add(persistedEntry);
+                    }
+                });
+        log.info("We added {} of {} persisted data entries.", addedEntries.size(), persistedEntries.size());
+
+        addedEntries.stream().forEach(persistedEntry -> {
+            try {
+                preValidationExecutor.execute(() -> {
+                    ProtectedStorageEntry protectedStorageEntry = persistedEntry.protectedStorageEntry;
+                    boolean isValid = Arrays.equals(protectedStorageEntry.getHashOfPayload(), persistedEntry.hashOfPayload)
+                            && checkPublicKeys(protectedStorageEntry, true) && checkSignature(protectedStorageEntry);
+                    if (!isValid) {
+                        UserThread.execute(() -> {
+                            ByteArray hashOfPayload = new ByteArray(persistedEntry.hashOfPayload);
+                            if (map.get(hashOfPayload) == protectedStorageEntry) {
+                                log.warn("Verification of persisted data entry failed. We remove it.");
+                                removeFromMap(hashOfPayload);
+                                hashMapChangedListeners.stream().forEach(e -> e.onRemoved(protectedStorageEntry));
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.debug("preValidationExecutor got shut down. We don't verify the persisted data entry.");
+            }
+        });
+    }
+
+    private void persistEntries() {
+        ArrayList<PersistedEntry> persistedEntries = new ArrayList<>();
+        map.entrySet().stream()
+                .filter(entry -> !entry.getValue().isExpired())
+                .forEach(entry -> persistedEntries.add(new PersistedEntry(entry.getKey().bytes, entry.getValue())));
+        persistedEntriesStorage.queueUpForSave(persistedEntries, 0);
+    }
+
+    private void putSequenceNumber(ByteArray hashOfData, MapValue mapValue) {
+        sequenceNumberMap.put(hashOfData, mapValue);
+        sequenceNumberJournal.append(hashOfData, mapValue, sequenceNumberMap);
+    }
+
     private HashMap<ByteArray, MapValue> getPurgedSequenceNumberMap(HashMap<ByteArray, MapValue> persisted) {
         HashMap<ByteArray, MapValue> purged = new HashMap<>();
         long maxAgeTs = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10);
@@ -506,6 +823,28 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
 
+    /**
+     * A received message together with the results of the checks done at the preValidationExecutor.
+     * The fields are written before isDone is set, so they are visible to the UserThread once it sees isDone.
+     */
+    private static final class PreValidatedMessage {
+        final BroadcastMessage message;
+        final NodeAddress sender;
+
+        ByteArray hashOfPayload;
+        boolean isValidSignedEntry;
+        // Only used for RefreshTTLMessage: the owner key we verified the signature with
+        @Nullable
+        PublicKey verifiedOwnerPubKey;
+        volatile boolean isDone;
+
+        PreValidatedMessage(BroadcastMessage message, NodeAddress sender) {
+            this.message = message;
+            this.sender = sender;
+        }
+    }
+
+
     /**
      * Used as container for calculating cryptographic hash of data and sequenceNumber.
      * Needs to be Serializable because we convert the object to a byte array via java serialization
@@ -562,10 +901,29 @@ public class P2PDataStorage implements MessageListener, ConnectionListener {
     }
 
 
+    /**
+     * Data entry with the values we need for restoring it after a restart
+     */
+    private static final class PersistedEntry implements Persistable {
+        // That object is saved to disc. We need to take care of changes to not break deserialization.
+        private static final long serialVersionUID = Version.LOCAL_DB_VERSION;
+
+        final byte[] hashOfPayload;
+        final ProtectedStorageEntry protectedStorageEntry;
+        final long timeStamp;
+
+        PersistedEntry(byte[] hashOfPayload, ProtectedStorageEntry protectedStorageEntry) {
+            this.hashOfPayload = hashOfPayload;
+            this.protectedStorageEntry = protectedStorageEntry;
+            this.timeStamp = protectedStorageEntry.timeStamp;
+        }
+    }
+
+
     /**
      * Used as value in map
      */
-    private static final class MapValue implements Persistable {
+    static final class MapValue implements Persistable {
         // That object is saved to disc. We need to take care of changes to not break deserialization.
         private static final long serialVersionUID = Version.LOCAL_DB_VERSION;
 
@@ -0,0 +1,122 @@
+package io.bitsquare.p2p.storage;
+
+import io.bitsquare.p2p.storage.messages.*;
+import io.bitsquare.p2p.storage.storageentry.ProtectedStorageEntry;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the broadcast messages we have processed already, so the copies we get relayed from our other peers
+ * are dropped before we hash and verify them again.
+ * <p>
+ * The signature is used as digest, as it is unique for the data and sequence number and we get it without any
+ * hashing. Fields which are not covered by the signature (at the RefreshTTLMessage the hash of the payload and the
+ * sequence number) are added to the digest. We only add messages we have applied successfully, otherwise a peer could
+ * send a manipulated copy with the signature of a message we have not received yet and we would drop the real one.
+ * <p>
+ * Entries expire after TTL_MILLIS and the cache holds max. MAX_SIZE entries. Not thread safe.
+ */
+final class SeenMessageCache {
+    static final int MAX_SIZE = 10_000;
+    static final long TTL_MILLIS = 5 * 60 * 1000;
+
+    // Insertion order, so the oldest entries are at the head
+    private final LinkedHashMap<P2PDataStorage.ByteArray, Long> timeStampByDigest =
+            new LinkedHashMap<P2PDataStorage.ByteArray, Long>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<P2PDataStorage.ByteArray, Long> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+
+    boolean contains(BroadcastMessage message) {
+        return contains(message, System.currentTimeMillis());
+    }
+
+    boolean contains(BroadcastMessage message, long nowMillis) {
+        removeExpired(nowMillis);
+        P2PDataStorage.ByteArray digest = getDigest(message);
+        return digest != null && timeStampByDigest.containsKey(digest);
+    }
+
+    void add(BroadcastMessage message) {
+        add(message, System.currentTimeMillis());
+    }
+
+    void add(BroadcastMessage message, long nowMillis) {
+        P2PDataStorage.ByteArray digest = getDigest(message);
+        if (digest != null) {
+            // We want the new time stamp at the end of the insertion order
+            timeStampByDigest.remove(digest);
+            timeStampByDigest.put(digest, nowMillis);
+        }
+    }
+
+    int size() {
+        return timeStampByDigest.size();
+    }
+
+    private void removeExpired(long nowMillis) {
+        Iterator<Long> iterator = timeStampByDigest.values().iterator();
+        while (iterator.hasNext() && nowMillis - iterator.next() > TTL_MILLIS)
+            iterator.remove();
+    }
+
+    // Returns null if the message has no signature we can use
+    @Nullable
+    static P2PDataStorage.ByteArray getDigest(BroadcastMessage message) {
+        byte type;
+        byte[] signature;
+        if (message instanceof AddDataMessage) {
+            type = 0;
+            signature = getSignature(((AddDataMessage) message).protectedStorageEntry);
+        } else if (message instanceof RemoveDataMessage) {
+            type = 1;
+            signature = getSignature(((RemoveDataMessage) message).protectedStorageEntry);
+        } else if (message instanceof RemoveMailboxDataMessage) {
+            type = 2;
+            signature = getSignature(((RemoveMailboxDataMessage) message).protectedMailboxStorageEntry);
+        } else if (message instanceof RefreshTTLMessage) {
+            type = 3;
+            RefreshTTLMessage refreshTTLMessage = (RefreshTTLMessage) message;
+            signature = getSignatureWithUnsignedFields(refreshTTLMessage.signature, refreshTTLMessage.hashOfPayload,
+                    refreshTTLMessage.sequenceNumber);
+        } else if (message instanceof RefreshTTLBundleMessage) {
+            type = 4;
+            signature = ((RefreshTTLBundleMessage) message).signature;
+        } else {
+            return null;
+        }
+
+        if (signature == null)
+            return null;
+
+        // The type is part of the digest, as the same signature in another message type must not be dropped
+        byte[] digest = new byte[signature.length + 1];
+        digest[0] = type;
+        System.arraycopy(signature, 0, digest, 1, signature.length);
+        return new P2PDataStorage.ByteArray(digest);
+    }
+
+    @Nullable
+    private static byte[] getSignatureWithUnsignedFields(@Nullable byte[] signature, @Nullable byte[] hashOfPayload,
+                                                         int sequenceNumber) {
+        if (signature == null || hashOfPayload == null)
+            return null;
+
+        return ByteBuffer.allocate(signature.length + hashOfPayload.length + 4)
+                .put(signature)
+                .put(hashOfPayload)
+                .putInt(sequenceNumber)
+                .array();
+    }
+
+    @Nullable
+    private static byte[] getSignature(@Nullable ProtectedStorageEntry protectedStorageEntry) {
+        return protectedStorageEntry != null ? protectedStorageEntry.signature : null;
+    }
+}
@@ -0,0 +1,206 @@
+package io.bitsquare.p2p.storage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.bitsquare.storage.FileManager;
+import io.bitsquare.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the changes of the sequenceNumberMap as fixed size records (hash, sequenceNr, timeStamp) appended to a
+ * journal file, instead of writing the whole map at each change. From time to time the map gets written as snapshot
+ * to the SequenceNumberMap file (same format as before) and the journal starts empty again.
+ * <p>
+ * At startup the records of the journal are applied to the snapshot. A partly written record at the end of the
+ * journal (e.g. after a crash) is ignored. We don't sync the journal to disk at each record, losing the latest
+ * records at a crash is not critical.
+ * <p>
+ * All file operations run on one background thread in the order they were requested.
+ */
+class SequenceNumberJournal {
+    private static final Logger log = LoggerFactory.getLogger(SequenceNumberJournal.class);
+
+    static final String SNAPSHOT_FILE_NAME = "SequenceNumberMap";
+    static final String JOURNAL_FILE_NAME = "SequenceNumberMap.journal";
+    // Only hashes from Hash.getHash (32 bytes) are supported
+    static final int HASH_LENGTH = 32;
+    static final int RECORD_LENGTH = HASH_LENGTH + 4 + 8;
+    private static final int MIN_RECORDS_FOR_COMPACTION = 1000;
+    private static final long SHUT_DOWN_TIMEOUT_SEC = 5;
+
+    private final File journalFile;
+    private final File snapshotFile;
+    private final FileManager<HashMap> snapshotFileManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("SequenceNumberJournal").setDaemon(true).build());
+    // Only accessed from the executor
+    private FileOutputStream journalOutputStream;
+    // Only accessed from the UserThread
+    private int numRecords;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    SequenceNumberJournal(File storageDir) {
+        journalFile = new File(storageDir, JOURNAL_FILE_NAME);
+        snapshotFile = new File(storageDir, SNAPSHOT_FILE_NAME);
+        snapshotFileManager = new FileManager<>(storageDir, snapshotFile, 100);
+    }
+
+    void shutDown() {
+        executor.execute(this::closeJournal);
+        // We don't interrupt the executor as it might be writing a snapshot. The queued tasks still get executed.
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUT_DOWN_TIMEOUT_SEC, TimeUnit.SECONDS))
+                log.warn("Writing the sequence number journal did not complete at shut down.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the snapshot written at the last compaction. A corrupted snapshot gets backed up and removed, like a
+     * corrupted file at Storage.initAndGetPersisted.
+     */
+    @SuppressWarnings("unchecked")
+    HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> readSnapshot() {
+        if (snapshotFile.exists()) {
+            try {
+                HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> snapshot = snapshotFileManager.read(snapshotFile);
+                snapshotFileManager.backupFile(SNAPSHOT_FILE_NAME);
+                return snapshot;
+            } catch (Throwable t) {
+                log.error("Reading the sequence number snapshot failed. We make a backup and remove the file. " +
+                        t.getMessage());
+                try {
+                    snapshotFileManager.removeAndBackupFile(SNAPSHOT_FILE_NAME);
+                } catch (IOException e) {
+                    // We swallow that
+                    e.printStackTrace();
+                    log.error(e.getMessage());
+                }
+                Storage.notifyFileCorrupted(SNAPSHOT_FILE_NAME);
+            }
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Applies the records of the journal to the persisted snapshot. Must be called before any append.
+     */
+    HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> replay(
+            HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> snapshot) {
+        if (!journalFile.exists())
+            return snapshot;
+
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            long numCompleteRecords = journalFile.length() / RECORD_LENGTH;
+            for (long i = 0; i < numCompleteRecords; i++) {
+                byte[] hash = new byte[HASH_LENGTH];
+                dataInputStream.readFully(hash);
+                int sequenceNr = dataInputStream.readInt();
+                long timeStamp = dataInputStream.readLong();
+                snapshot.put(new P2PDataStorage.ByteArray(hash), new P2PDataStorage.MapValue(sequenceNr, timeStamp));
+            }
+            numRecords = (int) numCompleteRecords;
+            log.info("Applied {} records of the sequence number journal.", numCompleteRecords);
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("Reading the sequence number journal failed. We use the snapshot only. " + e.getMessage());
+        }
+
+        // We cut off a partly written record, otherwise the new records would not be aligned
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+            long length = randomAccessFile.length();
+            if (length % RECORD_LENGTH != 0) {
+                log.warn("Sequence number journal ends with an incomplete record. We remove it.");
+                randomAccessFile.setLength(length - length % RECORD_LENGTH);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("Truncating the sequence number journal failed. " + e.getMessage());
+        }
+        return snapshot;
+    }
+
+    // Called on the UserThread
+    void append(P2PDataStorage.ByteArray hash, P2PDataStorage.MapValue mapValue,
+                HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> sequenceNumberMap) {
+        if (hash.bytes.length != HASH_LENGTH) {
+            log.warn("Hash has not the expected length. We write a snapshot instead. hash.length=" + hash.bytes.length);
+            compact(sequenceNumberMap);
+            return;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        record.put(hash.bytes);
+        record.putInt(mapValue.sequenceNr);
+        record.putLong(mapValue.timeStamp);
+        executor.execute(() -> write(record.array()));
+
+        // The journal should not get much larger than the snapshot
+        if (++numRecords > Math.max(MIN_RECORDS_FOR_COMPACTION, 2 * sequenceNumberMap.size()))
+            compact(sequenceNumberMap);
+    }
+
+    // Called on the UserThread. Needs to be called if entries got removed from the map.
+    void compact(HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> sequenceNumberMap) {
+        numRecords = 0;
+        // The map is changed on the UserThread, so we write a copy
+        HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> snapshot = new HashMap<>(sequenceNumberMap);
+        executor.execute(() -> {
+            // The snapshot contains all records written so far. We must only clear the journal after the snapshot
+            // was written successfully.
+            if (snapshotFileManager.saveNow(snapshot)) {
+                closeJournal();
+                if (!journalFile.delete() && journalFile.exists())
+                    log.warn("Could not delete journal file: " + journalFile);
+            }
+        });
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void write(byte[] record) {
+        try {
+            if (journalOutputStream == null)
+                journalOutputStream = new FileOutputStream(journalFile, true);
+            journalOutputStream.write(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("Writing to the sequence number journal failed. " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    private void closeJournal() {
+        if (journalOutputStream != null) {
+            try {
+                journalOutputStream.close();
+            } catch (IOException e) {
+                // We swallow that
+                e.printStackTrace();
+                log.error("Cannot close journal file. " + e.getMessage());
+            }
+            journalOutputStream = null;
+        }
+    }
+}
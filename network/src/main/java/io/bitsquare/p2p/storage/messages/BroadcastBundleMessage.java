@@ -0,0 +1,35 @@
+package io.bitsquare.p2p.storage.messages;
+
+import io.bitsquare.app.Version;
+import io.bitsquare.p2p.Message;
+
+import java.util.ArrayList;
+
+/**
+ * Several broadcast messages for the same peer sent in one message. The receiver handles the contained messages
+ * like separately received ones.
+ */
+public final class BroadcastBundleMessage implements Message {
+    // That object is sent over the wire, so we need to take care of version compatibility.
+    private static final long serialVersionUID = Version.P2P_NETWORK_VERSION;
+    private final int messageVersion = Version.getP2PMessageVersion();
+
+    public final ArrayList<BroadcastMessage> broadcastMessages;
+
+    public BroadcastBundleMessage(ArrayList<BroadcastMessage> broadcastMessages) {
+        this.broadcastMessages = broadcastMessages;
+    }
+
+    @Override
+    public int getMessageVersion() {
+        return messageVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastBundleMessage{" +
+                "messageVersion=" + messageVersion +
+                ", broadcastMessages.size()=" + broadcastMessages.size() +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+package io.bitsquare.p2p.storage.messages;
+
+import io.bitsquare.app.Version;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Refreshes the TTL of several data entries of the same owner with one signature. The signature covers all
+ * hashes and the sequence number. The sequence number is kept per owner, not per data entry.
+ */
+public final class RefreshTTLBundleMessage extends BroadcastMessage {
+    // That object is sent over the wire, so we need to take care of version compatibility.
+    private static final long serialVersionUID = Version.P2P_NETWORK_VERSION;
+
+    public final PublicKey ownerPubKey;
+    public final ArrayList<byte[]> hashesOfPayload;
+    public final int sequenceNumber;
+    public final byte[] signature;
+
+    public RefreshTTLBundleMessage(PublicKey ownerPubKey,
+                                   ArrayList<byte[]> hashesOfPayload,
+                                   int sequenceNumber,
+                                   byte[] signature) {
+        this.ownerPubKey = ownerPubKey;
+        this.hashesOfPayload = hashesOfPayload;
+        this.sequenceNumber = sequenceNumber;
+        this.signature = signature;
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshTTLBundleMessage{" +
+                "ownerPubKey.hashCode()=" + (ownerPubKey != null ? ownerPubKey.hashCode() : 0) +
+                ", hashesOfPayload.size()=" + (hashesOfPayload != null ? hashesOfPayload.size() : 0) +
+                ", sequenceNumber=" + sequenceNumber +
+                ", signature.hashCode()=" + Arrays.hashCode(signature) +
+                '}';
+    }
+}
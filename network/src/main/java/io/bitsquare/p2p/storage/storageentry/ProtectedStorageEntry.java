@@ -2,7 +2,9 @@ package io.bitsquare.p2p.storage.storageentry;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.bitsquare.app.Version;
+import io.bitsquare.common.crypto.Hash;
 import io.bitsquare.common.crypto.Sig;
+import io.bitsquare.common.util.Utilities;
 import io.bitsquare.common.wire.Payload;
 import io.bitsquare.p2p.storage.payload.StoragePayload;
 import org.slf4j.Logger;
@@ -20,6 +22,10 @@ public class ProtectedStorageEntry implements Payload {
 
     private static final Logger log = LoggerFactory.getLogger(ProtectedStorageEntry.class);
 
+    // Rough serialized size of an entry without its payload (class descriptors, pub key, signature). We rather
+    // overestimate as the estimation is used for keeping messages below the max. message size.
+    private static final int ESTIMATED_OVERHEAD = 2 * 1024;
+
     protected final StoragePayload storagePayload;
     private final byte[] ownerPubKeyBytes;
     public transient PublicKey ownerPubKey;
@@ -27,6 +33,10 @@ public class ProtectedStorageEntry implements Payload {
     public byte[] signature;
     @VisibleForTesting
     transient public long timeStamp;
+    // The hash requires to serialize the whole payload, so we calculate it only once
+    private transient volatile byte[] hashOfPayload;
+    // Set together with hashOfPayload from the same serialization
+    private transient int sizeOfPayload;
 
     public ProtectedStorageEntry(StoragePayload storagePayload, PublicKey ownerPubKey, int sequenceNumber, byte[] signature) {
         this.storagePayload = storagePayload;
@@ -52,6 +62,36 @@ public class ProtectedStorageEntry implements Payload {
         return storagePayload;
     }
 
+    /**
+     * @return The hash of the storagePayload, which is used as key in the P2PDataStorage. Must not be modified.
+     */
+    public byte[] getHashOfPayload() {
+        byte[] hash = hashOfPayload;
+        if (hash == null) {
+            byte[] serialized = Utilities.serialize(storagePayload);
+            sizeOfPayload = serialized != null ? serialized.length : 0;
+            hash = Hash.getHash(serialized);
+            hashOfPayload = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * @return The size of the serialized storagePayload. It is known once the hash got calculated, so we don't need
+     * to serialize the payload again.
+     */
+    public int getSizeOfPayload() {
+        getHashOfPayload();
+        return sizeOfPayload;
+    }
+
+    /**
+     * @return The estimated serialized size of the entry. We don't need to serialize the entry for it.
+     */
+    public int getEstimatedSize() {
+        return ESTIMATED_OVERHEAD + getSizeOfPayload();
+    }
+
     public void updateTimeStamp() {
         timeStamp = System.currentTimeMillis();
     }
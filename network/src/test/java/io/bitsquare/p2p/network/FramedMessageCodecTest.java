@@ -0,0 +1,55 @@
+package io.bitsquare.p2p.network;
+
+import io.bitsquare.p2p.network.messages.CloseConnectionMessage;
+import io.bitsquare.p2p.peers.keepalive.messages.Ping;
+import io.bitsquare.p2p.peers.keepalive.messages.Pong;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.*;
+
+public class FramedMessageCodecTest {
+
+    @Test
+    public void testKeepAliveMessagesUseCompactCodec() throws IOException, ClassNotFoundException {
+        byte[] frame = FramedMessageCodec.encode(new Ping(42, 300));
+        assertEquals(FramedMessageCodec.TYPE_PING, frame[0]);
+        assertEquals(9, frame.length);
+        Ping ping = (Ping) FramedMessageCodec.decode(frame);
+        assertEquals(42, ping.nonce);
+        assertEquals(300, ping.lastRoundTripTime);
+
+        frame = FramedMessageCodec.encode(new Pong(42));
+        assertEquals(FramedMessageCodec.TYPE_PONG, frame[0]);
+        assertEquals(42, ((Pong) FramedMessageCodec.decode(frame)).requestNonce);
+    }
+
+    @Test
+    public void testJavaSerializedFallback() throws IOException, ClassNotFoundException {
+        byte[] frame = FramedMessageCodec.encode(new CloseConnectionMessage("test"));
+        assertEquals(FramedMessageCodec.TYPE_JAVA_SERIALIZED, frame[0]);
+        assertEquals("test", ((CloseConnectionMessage) FramedMessageCodec.decode(frame)).reason);
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownTypeId() throws IOException, ClassNotFoundException {
+        FramedMessageCodec.decode(new byte[]{99, 0, 0});
+    }
+
+    @Test
+    public void testDetectWireFormat() throws IOException {
+        PushbackInputStream framed = new PushbackInputStream(
+                new ByteArrayInputStream(WireFormat.getFramedPreamble()), WireFormat.PREAMBLE_LENGTH);
+        assertEquals(WireFormat.FRAMED, WireFormat.detect(framed));
+
+        byte[] javaStreamHeader = new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+        PushbackInputStream java = new PushbackInputStream(
+                new ByteArrayInputStream(javaStreamHeader), WireFormat.PREAMBLE_LENGTH);
+        assertEquals(WireFormat.JAVA_SERIALIZATION, WireFormat.detect(java));
+        // header must be pushed back for the ObjectInputStream
+        assertEquals(0xAC, java.read());
+    }
+}
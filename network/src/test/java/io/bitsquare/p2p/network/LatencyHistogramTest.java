@@ -0,0 +1,39 @@
+package io.bitsquare.p2p.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getSnapshot().getPercentile(50));
+
+        for (int i = 0; i < 98; i++)
+            histogram.record(40);
+        histogram.record(700);
+        histogram.record(60000);
+        // Negative values are ignored
+        histogram.record(-1);
+
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(100, snapshot.count);
+        assertEquals((98 * 40 + 700 + 60000) / 100, snapshot.getMean());
+        assertEquals(60000, snapshot.max);
+        assertEquals(50, snapshot.getPercentile(50));
+        assertEquals(1000, snapshot.getPercentile(99));
+        assertEquals(60000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        assertEquals(5, histogram.getSnapshot().getPercentile(100));
+        histogram.record(6);
+        assertEquals(6, histogram.getSnapshot().getPercentile(100));
+        assertEquals(5, histogram.getSnapshot().getPercentile(50));
+    }
+}
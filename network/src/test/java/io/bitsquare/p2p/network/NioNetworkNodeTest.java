@@ -0,0 +1,117 @@
+package io.bitsquare.p2p.network;
+
+import io.bitsquare.p2p.NodeAddress;
+import io.bitsquare.p2p.peers.keepalive.messages.Ping;
+import io.bitsquare.p2p.peers.keepalive.messages.Pong;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioNetworkNodeTest {
+    private static final Logger log = LoggerFactory.getLogger(NioNetworkNodeTest.class);
+
+    @Test
+    public void testPingPong() throws Exception {
+        // We let the nodes bind to free ports
+        NioNetworkNode node1 = new NioNetworkNode(0);
+        NioNetworkNode node2 = new NioNetworkNode(0);
+
+        CountDownLatch msgLatch = new CountDownLatch(2);
+        node1.addMessageListener((message, connection) -> {
+            log.debug("onMessage node1 " + message);
+            if (message instanceof Ping)
+                node1.sendMessage(connection, new Pong(((Ping) message).nonce));
+            msgLatch.countDown();
+        });
+        node2.addMessageListener((message, connection) -> {
+            log.debug("onMessage node2 " + message);
+            if (message instanceof Pong)
+                assertEquals(42, ((Pong) message).requestNonce);
+            msgLatch.countDown();
+        });
+        node1.start(null);
+        node2.start(null);
+
+        node2.sendMessage(node1.getNodeAddress(), new Ping(42, 0)).get(5, TimeUnit.SECONDS);
+        assertTrue(msgLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(WireFormat.FRAMED, node2.getAllConnections().iterator().next().getWireFormat());
+
+        CountDownLatch shutDownLatch = new CountDownLatch(2);
+        node1.shutDown(shutDownLatch::countDown);
+        node2.shutDown(shutDownLatch::countDown);
+        assertTrue(shutDownLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInboundJavaSerialization() throws Exception {
+        NioNetworkNode node = new NioNetworkNode(0);
+        CompletableFuture<Connection> received = new CompletableFuture<>();
+        node.addMessageListener((message, connection) -> {
+            if (message instanceof Ping && ((Ping) message).nonce == 42)
+                received.complete(connection);
+        });
+        node.start(null);
+
+        // Simulates a peer running an older version, which knows only java serialization
+        try (Socket socket = new Socket("localhost", node.getNodeAddress().port)) {
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
+            objectOutputStream.writeObject(new Ping(42, 0));
+            objectOutputStream.flush();
+
+            assertEquals(WireFormat.JAVA_SERIALIZATION, received.get(5, TimeUnit.SECONDS).getWireFormat());
+        }
+
+        CountDownLatch shutDownLatch = new CountDownLatch(1);
+        node.shutDown(shutDownLatch::countDown);
+        assertTrue(shutDownLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFallbackToJavaSerialization() throws Exception {
+        // Simulates a peer running an older version, which knows only java serialization
+        ServerSocket serverSocket = new ServerSocket(0);
+        CompletableFuture<Object> received = new CompletableFuture<>();
+        Thread legacyPeer = new Thread(() -> {
+            try {
+                // The framed preamble gets answered with the ObjectOutputStream header
+                try (Socket socket = serverSocket.accept()) {
+                    new ObjectOutputStream(socket.getOutputStream()).flush();
+                    new DataInputStream(socket.getInputStream()).readFully(new byte[WireFormat.PREAMBLE_LENGTH]);
+                }
+                try (Socket socket = serverSocket.accept()) {
+                    new ObjectOutputStream(socket.getOutputStream()).flush();
+                    received.complete(new ObjectInputStream(socket.getInputStream()).readObject());
+                }
+            } catch (Exception e) {
+                received.completeExceptionally(e);
+            }
+        });
+        legacyPeer.setDaemon(true);
+        legacyPeer.start();
+
+        NioNetworkNode node = new NioNetworkNode(0);
+        node.start(null);
+        Connection connection = node.sendMessage(new NodeAddress("localhost", serverSocket.getLocalPort()),
+                new Ping(42, 0)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(WireFormat.JAVA_SERIALIZATION, connection.getWireFormat());
+        assertEquals(42, ((Ping) received.get(5, TimeUnit.SECONDS)).nonce);
+
+        CountDownLatch shutDownLatch = new CountDownLatch(1);
+        node.shutDown(shutDownLatch::countDown);
+        assertTrue(shutDownLatch.await(5, TimeUnit.SECONDS));
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,47 @@
+package io.bitsquare.p2p.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketRateLimiterTest {
+
+    @Test
+    public void testMessageBurstAndRefill() {
+        long now = 0;
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(now);
+        TokenBucketRateLimiter.Limits limits = TokenBucketRateLimiter.getLimits(Connection.PeerType.PEER);
+        for (int i = 0; i < limits.maxMessageBurst; i++)
+            assertTrue(rateLimiter.tryAcquire(Connection.PeerType.PEER, 100, now));
+        assertFalse(rateLimiter.tryAcquire(Connection.PeerType.PEER, 100, now));
+
+        // Other peer types have their own buckets
+        assertTrue(rateLimiter.tryAcquire(Connection.PeerType.SEED_NODE, 100, now));
+
+        // After 1 sec we get messagesPerSec tokens back
+        now += TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < limits.messagesPerSec; i++)
+            assertTrue(rateLimiter.tryAcquire(Connection.PeerType.PEER, 100, now));
+        assertFalse(rateLimiter.tryAcquire(Connection.PeerType.PEER, 100, now));
+    }
+
+    @Test
+    public void testByteLimit() {
+        long now = 0;
+        TokenBucketRateLimiter.Limits defaultLimits = TokenBucketRateLimiter.getLimits(Connection.PeerType.DIRECT_MSG_PEER);
+        TokenBucketRateLimiter.setLimits(Connection.PeerType.DIRECT_MSG_PEER, new TokenBucketRateLimiter.Limits(100, 100, 1000, 1000));
+        try {
+            TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(now);
+            assertTrue(rateLimiter.tryAcquire(Connection.PeerType.DIRECT_MSG_PEER, 600, now));
+            assertFalse(rateLimiter.tryAcquire(Connection.PeerType.DIRECT_MSG_PEER, 600, now));
+
+            now += TimeUnit.MILLISECONDS.toNanos(200);
+            assertTrue(rateLimiter.tryAcquire(Connection.PeerType.DIRECT_MSG_PEER, 600, now));
+        } finally {
+            TokenBucketRateLimiter.setLimits(Connection.PeerType.DIRECT_MSG_PEER, defaultLimits);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.bitsquare.p2p.peers.getdata;
+
+import io.bitsquare.p2p.storage.P2PDataStorage;
+import io.bitsquare.p2p.storage.mocks.MockData;
+import io.bitsquare.p2p.storage.storageentry.ProtectedStorageEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class KnownDataDigestTest {
+    private PublicKey publicKey;
+
+    @Before
+    public void setup() throws Exception {
+        publicKey = KeyPairGenerator.getInstance("DSA").generateKeyPair().getPublic();
+    }
+
+    @Test
+    public void testOnlyMissingAndNewerEntriesAreReturned() {
+        Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> requesterMap = new HashMap<>();
+        Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> responderMap = new HashMap<>();
+        ProtectedStorageEntry known = createEntry("known", 1);
+        requesterMap.put(getKey(1), known);
+        responderMap.put(getKey(1), known);
+        requesterMap.put(getKey(2), createEntry("updated", 1));
+        ProtectedStorageEntry updated = createEntry("updated", 2);
+        responderMap.put(getKey(2), updated);
+        ProtectedStorageEntry missing = createEntry("missing", 0);
+        responderMap.put(getKey(3), missing);
+
+        byte[] digest = KnownDataDigest.create(requesterMap);
+        assertEquals(2 * KnownDataDigest.RECORD_LENGTH, digest.length);
+
+        HashSet<ProtectedStorageEntry> result = KnownDataDigest.getMissingEntries(responderMap, digest);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(updated));
+        assertTrue(result.contains(missing));
+        assertFalse(result.contains(known));
+    }
+
+    @Test
+    public void testRequestWithoutDigestGetsAllEntries() {
+        Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> responderMap = new HashMap<>();
+        responderMap.put(getKey(1), createEntry("a", 0));
+        responderMap.put(getKey(2), createEntry("b", 0));
+        assertEquals(2, KnownDataDigest.getMissingEntries(responderMap, null).size());
+        assertEquals(2, KnownDataDigest.getMissingEntries(responderMap, new byte[0]).size());
+    }
+
+    private ProtectedStorageEntry createEntry(String msg, int sequenceNumber) {
+        return new ProtectedStorageEntry(new MockData(msg, publicKey), publicKey, sequenceNumber, new byte[0]);
+    }
+
+    private P2PDataStorage.ByteArray getKey(int i) {
+        byte[] bytes = new byte[32];
+        bytes[0] = (byte) i;
+        return new P2PDataStorage.ByteArray(bytes);
+    }
+}
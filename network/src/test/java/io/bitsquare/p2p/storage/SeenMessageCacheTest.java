@@ -0,0 +1,66 @@
+package io.bitsquare.p2p.storage;
+
+import io.bitsquare.p2p.storage.messages.RefreshTTLMessage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SeenMessageCacheTest {
+
+    @Test
+    public void testContains() {
+        SeenMessageCache cache = new SeenMessageCache();
+        RefreshTTLMessage message = getRefreshTTLMessage(1);
+        assertFalse(cache.contains(message, 0));
+
+        cache.add(message, 0);
+        assertTrue(cache.contains(message, 0));
+        // A copy we received from another peer
+        assertTrue(cache.contains(getRefreshTTLMessage(1), 0));
+        assertFalse(cache.contains(getRefreshTTLMessage(2), 0));
+    }
+
+    @Test
+    public void testUnsignedFieldsInDigest() {
+        SeenMessageCache cache = new SeenMessageCache();
+        byte[] signature = new byte[]{1, 2, 3};
+        // A copy with a manipulated sequence number or payload hash but the original signature
+        cache.add(new RefreshTTLMessage(new byte[32], signature, new byte[32], 2), 0);
+        assertFalse(cache.contains(new RefreshTTLMessage(new byte[32], signature, new byte[32], 1), 0));
+        byte[] otherHashOfPayload = new byte[32];
+        otherHashOfPayload[0] = 1;
+        assertFalse(cache.contains(new RefreshTTLMessage(new byte[32], signature, otherHashOfPayload, 2), 0));
+        assertTrue(cache.contains(new RefreshTTLMessage(new byte[32], signature, new byte[32], 2), 0));
+    }
+
+    @Test
+    public void testExpiry() {
+        SeenMessageCache cache = new SeenMessageCache();
+        cache.add(getRefreshTTLMessage(1), 0);
+        cache.add(getRefreshTTLMessage(2), 1000);
+
+        assertTrue(cache.contains(getRefreshTTLMessage(1), SeenMessageCache.TTL_MILLIS));
+        assertFalse(cache.contains(getRefreshTTLMessage(1), SeenMessageCache.TTL_MILLIS + 1));
+        assertTrue(cache.contains(getRefreshTTLMessage(2), SeenMessageCache.TTL_MILLIS + 1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testMaxSize() {
+        SeenMessageCache cache = new SeenMessageCache();
+        for (int i = 0; i <= SeenMessageCache.MAX_SIZE; i++)
+            cache.add(getRefreshTTLMessage(i), 0);
+
+        assertEquals(SeenMessageCache.MAX_SIZE, cache.size());
+        // The oldest entry got removed
+        assertFalse(cache.contains(getRefreshTTLMessage(0), 0));
+        assertTrue(cache.contains(getRefreshTTLMessage(SeenMessageCache.MAX_SIZE), 0));
+    }
+
+    private RefreshTTLMessage getRefreshTTLMessage(int signature) {
+        byte[] signatureBytes = new byte[]{(byte) (signature >> 24), (byte) (signature >> 16), (byte) (signature >> 8), (byte) signature};
+        return new RefreshTTLMessage(new byte[32], signatureBytes, new byte[32], 1);
+    }
+}
@@ -0,0 +1,112 @@
+package io.bitsquare.p2p.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceNumberJournalTest {
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("sequence_number_journal_test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testReplay() {
+        SequenceNumberJournal journal = new SequenceNumberJournal(dir);
+        HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> map = journal.replay(new HashMap<>());
+        putAndAppend(journal, map, getHash(1), 1, 100);
+        putAndAppend(journal, map, getHash(2), 5, 200);
+        putAndAppend(journal, map, getHash(1), 2, 300);
+        journal.shutDown();
+
+        HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> replayed = new SequenceNumberJournal(dir).replay(new HashMap<>());
+        assertEquals(map, replayed);
+        assertEquals(2, replayed.get(getHash(1)).sequenceNr);
+        assertEquals(300, replayed.get(getHash(1)).timeStamp);
+    }
+
+    @Test
+    public void testIncompleteRecordGetsRemoved() throws IOException {
+        SequenceNumberJournal journal = new SequenceNumberJournal(dir);
+        HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> map = journal.replay(new HashMap<>());
+        putAndAppend(journal, map, getHash(1), 1, 100);
+        journal.shutDown();
+
+        // Simulates a crash while writing a record
+        try (FileOutputStream fileOutputStream = new FileOutputStream(new File(dir, SequenceNumberJournal.JOURNAL_FILE_NAME), true)) {
+            fileOutputStream.write(new byte[10]);
+        }
+
+        journal = new SequenceNumberJournal(dir);
+        map = journal.replay(new HashMap<>());
+        assertEquals(1, map.size());
+        putAndAppend(journal, map, getHash(2), 1, 200);
+        journal.shutDown();
+
+        assertEquals(map, new SequenceNumberJournal(dir).replay(new HashMap<>()));
+    }
+
+    @Test
+    public void testCompact() {
+        SequenceNumberJournal journal = new SequenceNumberJournal(dir);
+        HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> map = journal.replay(new HashMap<>());
+        putAndAppend(journal, map, getHash(1), 1, 100);
+        putAndAppend(journal, map, getHash(2), 1, 100);
+        map.remove(getHash(1));
+        journal.compact(map);
+        journal.shutDown();
+
+        // The shut down waits for the snapshot write
+        assertFalse(new File(dir, SequenceNumberJournal.JOURNAL_FILE_NAME).exists());
+        assertEquals(map, new SequenceNumberJournal(dir).readSnapshot());
+    }
+
+    @Test
+    public void testCorruptedSnapshot() throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(new File(dir, SequenceNumberJournal.SNAPSHOT_FILE_NAME))) {
+            fileOutputStream.write(new byte[]{1, 2, 3});
+        }
+
+        assertTrue(new SequenceNumberJournal(dir).readSnapshot().isEmpty());
+        assertFalse(new File(dir, SequenceNumberJournal.SNAPSHOT_FILE_NAME).exists());
+        assertTrue(new File(new File(dir, "backup_of_corrupted_data"), SequenceNumberJournal.SNAPSHOT_FILE_NAME).exists());
+    }
+
+    private void putAndAppend(SequenceNumberJournal journal, HashMap<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> map,
+                              P2PDataStorage.ByteArray hash, int sequenceNr, long timeStamp) {
+        P2PDataStorage.MapValue mapValue = new P2PDataStorage.MapValue(sequenceNr, timeStamp);
+        map.put(hash, mapValue);
+        journal.append(hash, mapValue, map);
+    }
+
+    private P2PDataStorage.ByteArray getHash(int i) {
+        byte[] hash = new byte[SequenceNumberJournal.HASH_LENGTH];
+        hash[0] = (byte) i;
+        return new P2PDataStorage.ByteArray(hash);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File child : files)
+                delete(child);
+        file.delete();
+    }
+}
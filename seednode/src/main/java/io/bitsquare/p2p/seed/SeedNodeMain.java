@@ -2,7 +2,12 @@ package io.bitsquare.p2p.seed;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.bitsquare.app.BitsquareEnvironment;
+import io.bitsquare.common.TimingWheelTimer;
 import io.bitsquare.common.UserThread;
+import io.bitsquare.p2p.P2PService;
+import io.bitsquare.p2p.network.Connection;
+import io.bitsquare.p2p.network.WireFormat;
+import io.bitsquare.p2p.peers.Broadcaster;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +20,14 @@ public class SeedNodeMain {
     private static final Logger log = LoggerFactory.getLogger(SeedNodeMain.class);
 
     private static final boolean USE_DETAILED_LOGGING = true;
+    // Optional system property (-DmetricsPort=port) for starting the SeedNodeMetricsServer
+    private static final String METRICS_PORT_KEY = "metricsPort";
+    // Optional system property (-DbroadcastBundling=true) for sending the broadcasts bundled. Only to be used once
+    // all peers support the BroadcastBundleMessage.
+    private static final String BROADCAST_BUNDLING_KEY = "broadcastBundling";
+    // Optional system property (-DnioNetworkNode=true) for using the NioNetworkNode (localhost only) and the framed
+    // wire format at our outbound connections. Peers not supporting the framed format get connected as before.
+    private static final String NIO_NETWORK_NODE_KEY = "nioNetworkNode";
 
     private SeedNode seedNode;
 
@@ -30,6 +43,13 @@ public class SeedNodeMain {
                 .setDaemon(true)
                 .build();
         UserThread.setExecutor(Executors.newSingleThreadExecutor(threadFactory));
+        // Seed nodes have many short living timers from broadcasts and requests
+        UserThread.setTimerClass(TimingWheelTimer.class);
+        Broadcaster.setBundlingEnabled(Boolean.getBoolean(BROADCAST_BUNDLING_KEY));
+        if (Boolean.getBoolean(NIO_NETWORK_NODE_KEY)) {
+            P2PService.setUseNioNetworkNode(true);
+            Connection.setPreferredWireFormat(WireFormat.FRAMED);
+        }
 
         // setup UncaughtExceptionHandler
         Thread.UncaughtExceptionHandler handler = (thread, throwable) -> {
@@ -52,6 +72,16 @@ public class SeedNodeMain {
                 log.error("Executing task failed. " + t.getMessage());
                 t.printStackTrace();
             }
+
+            Integer metricsPort = Integer.getInteger(METRICS_PORT_KEY);
+            if (metricsPort != null && seedNode != null && seedNode.getSeedNodeP2PService() != null) {
+                try {
+                    new SeedNodeMetricsServer(metricsPort, seedNode.getSeedNodeP2PService()).start();
+                } catch (Throwable t) {
+                    log.error("Starting the metrics server failed. " + t.getMessage());
+                    t.printStackTrace();
+                }
+            }
         });
 
         while (true) {
@@ -0,0 +1,155 @@
+package io.bitsquare.p2p.seed;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.bitsquare.common.UserThread;
+import io.bitsquare.p2p.P2PService;
+import io.bitsquare.p2p.network.Connection;
+import io.bitsquare.p2p.network.LatencyHistogram;
+import io.bitsquare.p2p.network.NetworkMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the metrics of the seed node as plain text (one "name value" per line) at http://127.0.0.1:port/metrics.
+ * Only reachable from the local host. Started if the seed node is run with -DmetricsPort=port.
+ * <p>
+ * The data of the P2PService is read on the UserThread, so a blocked UserThread shows up as a failing request.
+ */
+class SeedNodeMetricsServer {
+    private static final Logger log = LoggerFactory.getLogger(SeedNodeMetricsServer.class);
+
+    private static final long USER_THREAD_TIMEOUT_SEC = 5;
+
+    private final HttpServer httpServer;
+    private final P2PService p2PService;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    SeedNodeMetricsServer(int port, P2PService p2PService) throws IOException {
+        this.p2PService = p2PService;
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("SeedNodeMetricsServer").setDaemon(true).build()));
+    }
+
+    void start() {
+        httpServer.start();
+        log.info("Metrics are served at http://{}:{}/metrics", httpServer.getAddress().getHostString(),
+                httpServer.getAddress().getPort());
+    }
+
+    void stop() {
+        httpServer.stop(0);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Called from the thread of the httpServer
+    private void handle(HttpExchange httpExchange) throws IOException {
+        int status;
+        String body;
+        try {
+            CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+            UserThread.execute(() -> {
+                try {
+                    future.complete(getUserThreadMetrics());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            Map<String, Object> metrics = future.get(USER_THREAD_TIMEOUT_SEC, TimeUnit.SECONDS);
+            addNetworkMetrics(metrics);
+            addSystemLoad(metrics);
+
+            StringBuilder sb = new StringBuilder();
+            metrics.entrySet().stream().forEach(e -> sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n'));
+            status = 200;
+            body = sb.toString();
+        } catch (Throwable t) {
+            log.warn("Collecting the metrics failed. " + t.toString());
+            status = 503;
+            body = "Collecting the metrics failed. " + t.toString() + "\n";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        httpExchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        httpExchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = httpExchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    // Called on the UserThread, as the connections and the data map are changed there
+    private Map<String, Object> getUserThreadMetrics() {
+        Map<String, Object> metrics = new TreeMap<>();
+        for (Connection.PeerType peerType : Connection.PeerType.values())
+            metrics.put("connections{peerType=" + peerType + "}", 0);
+        p2PService.getNetworkNode().getAllConnections().stream().forEach(connection -> {
+            metrics.merge("connections{peerType=" + connection.getPeerType() + "}", 1, (a, b) -> (int) a + (int) b);
+            metrics.merge("outboundQueueSize", connection.getOutboundQueueSize(), (a, b) -> (int) a + (int) b);
+        });
+        metrics.putIfAbsent("outboundQueueSize", 0);
+
+        metrics.put("dataMapSize", p2PService.getDataMap().size());
+        p2PService.getDataMap().values().stream().forEach(protectedStorageEntry ->
+                metrics.merge("dataMapSize{payload=" + protectedStorageEntry.getStoragePayload().getClass().getSimpleName() + "}",
+                        1, (a, b) -> (int) a + (int) b));
+
+        metrics.put("pendingBroadcasts", p2PService.getBroadcaster().getNumPendingBroadcasts());
+        metrics.put("bundledBroadcastMessages", p2PService.getBroadcaster().getNumBundledMessages());
+        return metrics;
+    }
+
+    private void addNetworkMetrics(Map<String, Object> metrics) {
+        NetworkMetrics.Snapshot snapshot = NetworkMetrics.getSnapshot();
+        metrics.put("sentBytes", snapshot.sentBytes);
+        metrics.put("receivedBytes", snapshot.receivedBytes);
+        snapshot.sentMessages.entrySet().stream()
+                .forEach(e -> metrics.put("sentMessages{class=" + e.getKey() + "}", e.getValue()));
+        snapshot.receivedMessages.entrySet().stream()
+                .forEach(e -> metrics.put("receivedMessages{class=" + e.getKey() + "}", e.getValue()));
+        snapshot.ruleViolations.entrySet().stream()
+                .forEach(e -> metrics.put("ruleViolations{ruleViolation=" + e.getKey() + "}", e.getValue()));
+        addHistogram(metrics, "roundTripTimeMs", snapshot.roundTripTimes);
+        metrics.put("getDataResponses", snapshot.getDataResponses);
+        metrics.put("getDataResponseBytes", snapshot.getDataResponseBytes);
+        addHistogram(metrics, "getDataResponseTimeMs", snapshot.getDataResponseTimes);
+    }
+
+    private void addHistogram(Map<String, Object> metrics, String name, LatencyHistogram.Snapshot snapshot) {
+        metrics.put(name + "{stat=count}", snapshot.count);
+        metrics.put(name + "{stat=mean}", snapshot.getMean());
+        metrics.put(name + "{stat=p50}", snapshot.getPercentile(50));
+        metrics.put(name + "{stat=p99}", snapshot.getPercentile(99));
+        metrics.put(name + "{stat=max}", snapshot.max);
+    }
+
+    // Same values as in Profiler.printSystemLoad, plus the max. heap size
+    private void addSystemLoad(Map<String, Object> metrics) {
+        Runtime runtime = Runtime.getRuntime();
+        metrics.put("threads", Thread.activeCount());
+        metrics.put("usedMemoryBytes", runtime.totalMemory() - runtime.freeMemory());
+        metrics.put("totalMemoryBytes", runtime.totalMemory());
+        metrics.put("maxMemoryBytes", runtime.maxMemory());
+    }
+}